@@ -0,0 +1,58 @@
+package com.avevad.cloud9.benchmarks;
+
+import com.avevad.cloud9.core.CloudClient;
+import com.avevad.cloud9.core.CloudCommon.Node;
+import com.avevad.cloud9.core.CloudCommon.NodeType;
+import com.avevad.cloud9.testserver.TestServer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.avevad.cloud9.core.CloudCommon.FD_MODE_WRITE;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ConnectionBenchmark {
+    @Param({"tcp", "buffered-tcp", "nio", "buffered-nio"})
+    public String connection;
+
+    @Param({"4096"})
+    public int writeSize;
+
+    private TestServer server;
+    private CloudClient client;
+    private Node home;
+    private byte fd;
+    private byte[] data;
+
+    @Setup
+    public void setup() throws Exception {
+        server = Loopback.startServer();
+        client = Loopback.login(server, connection);
+        home = client.getHome();
+        fd = client.openFD(client.makeNode(home, "data", NodeType.FILE), FD_MODE_WRITE);
+        data = new byte[writeSize];
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        client.closeFD(fd);
+        client.disconnect();
+        server.close();
+    }
+
+    @Benchmark
+    public CloudClient.NodeInfo getNodeInfo() throws Exception {
+        return client.getNodeInfo(home);
+    }
+
+    @Benchmark
+    public void writeFD() throws Exception {
+        client.seekFD(fd, 0);
+        client.writeFD(fd, data, 0, writeSize);
+    }
+}
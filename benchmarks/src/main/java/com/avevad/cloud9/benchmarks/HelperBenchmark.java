@@ -0,0 +1,60 @@
+package com.avevad.cloud9.benchmarks;
+
+import com.avevad.cloud9.core.CloudCommon.Node;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import static com.avevad.cloud9.core.CloudCommon.NODE_ID_SIZE;
+import static com.avevad.cloud9.core.CloudConnection.Helper.*;
+
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class HelperBenchmark {
+    private final byte[] buffer = new byte[NODE_ID_SIZE];
+    private final MemoryConnection connection = new MemoryConnection(4096);
+    private final Node node = Node.fromString("0123456789abcdef0123456789abcdef");
+    private long value = 0x0123456789abcdefL;
+
+    @Param({"file.txt", "\u0414\u043e\u043a\u0443\u043c\u0435\u043d\u0442\u044b 2020"})
+    public String name;
+
+    @Benchmark
+    public long bufInt64() {
+        bufSendInt64(buffer, 0, value++);
+        return bufRecvInt64(buffer, 0);
+    }
+
+    @Benchmark
+    public long requestHeader() throws IOException {
+        connection.reset();
+        sendInt32(connection, (int) value);
+        sendInt16(connection, (short) value);
+        sendInt64(connection, value++);
+        return recvInt32(connection) + recvInt16(connection) + recvInt64(connection);
+    }
+
+    @Benchmark
+    public String string() throws IOException {
+        connection.reset();
+        sendString(connection, name);
+        return recvString(connection, stringSize(name));
+    }
+
+    @Benchmark
+    public Node node() throws IOException {
+        connection.reset();
+        node.sendNode(connection);
+        return Node.recvNode(connection);
+    }
+
+    @Benchmark
+    public String nodeToString() {
+        return node.toString();
+    }
+}
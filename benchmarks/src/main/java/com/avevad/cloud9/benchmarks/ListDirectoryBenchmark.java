@@ -0,0 +1,66 @@
+package com.avevad.cloud9.benchmarks;
+
+import com.avevad.cloud9.core.CloudClient;
+import com.avevad.cloud9.core.CloudCommon.Node;
+import com.avevad.cloud9.testserver.MemoryTree;
+import com.avevad.cloud9.testserver.TestServer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.avevad.cloud9.core.CloudCommon.NODE_TYPE_FILE;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ListDirectoryBenchmark {
+    @Param({"100", "1000", "10000"})
+    public int entries;
+
+    private TestServer server;
+    private CloudClient client;
+    private Node directory;
+
+    @Setup
+    public void setup() throws Exception {
+        server = Loopback.startServer();
+        TestServer.User user = server.getUser(Loopback.LOGIN);
+        MemoryTree.Entry[] result = new MemoryTree.Entry[1];
+        for (int i = 0; i < entries; i++)
+            server.tree.makeNode(user.home, String.format("entry-%08d.dat", i), NODE_TYPE_FILE, user.login, result);
+        client = Loopback.login(server, "nio");
+        directory = user.home.node;
+    }
+
+    @TearDown
+    public void tearDown() {
+        client.disconnect();
+        server.close();
+    }
+
+    @Benchmark
+    public List<CloudClient.DirectoryEntry> listDirectory() {
+        return client.listDirectoryAsync(directory).join();
+    }
+
+    @Benchmark
+    public int listDirectoryCallback() throws Exception {
+        int[] count = new int[1];
+        client.listDirectory(directory, (node, name) -> count[0] += name.length());
+        return count[0];
+    }
+
+    @Benchmark
+    public int listDirectoryStream() throws Exception {
+        int[] count = new int[1];
+        client.listDirectory(directory, entry -> {
+            count[0] += entry.nameSize();
+            return true;
+        });
+        return count[0];
+    }
+}
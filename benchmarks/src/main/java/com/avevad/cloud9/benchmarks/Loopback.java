@@ -0,0 +1,44 @@
+package com.avevad.cloud9.benchmarks;
+
+import com.avevad.cloud9.core.BufferedConnection;
+import com.avevad.cloud9.core.CloudClient;
+import com.avevad.cloud9.core.CloudConnection;
+import com.avevad.cloud9.core.NIOConnection;
+import com.avevad.cloud9.core.TCPConnection;
+import com.avevad.cloud9.testserver.TestServer;
+
+import java.io.IOException;
+
+public final class Loopback {
+    public static final String LOGIN = "bench";
+    public static final String PASSWORD = "bench";
+    public static final int BUFFER_SIZE = 64 * 1024;
+
+    private Loopback() {
+    }
+
+    public static TestServer startServer() throws IOException {
+        TestServer server = new TestServer().start();
+        server.addUser(LOGIN, PASSWORD);
+        return server;
+    }
+
+    public static CloudConnection connect(TestServer server, String kind) throws IOException {
+        switch (kind) {
+            case "tcp":
+                return new TCPConnection(server.getHost(), server.getPort());
+            case "buffered-tcp":
+                return new BufferedConnection(new TCPConnection(server.getHost(), server.getPort()), BUFFER_SIZE);
+            case "nio":
+                return new NIOConnection(server.getHost(), server.getPort());
+            case "buffered-nio":
+                return new BufferedConnection(new NIOConnection(server.getHost(), server.getPort()), BUFFER_SIZE);
+            default:
+                throw new IllegalArgumentException("unknown connection kind: " + kind);
+        }
+    }
+
+    public static CloudClient login(TestServer server, String kind) throws Exception {
+        return new CloudClient(connect(server, kind), LOGIN, () -> PASSWORD);
+    }
+}
@@ -0,0 +1,54 @@
+package com.avevad.cloud9.benchmarks;
+
+import com.avevad.cloud9.core.CloudConnection;
+
+import java.io.EOFException;
+import java.util.Arrays;
+
+final class MemoryConnection implements CloudConnection {
+    private byte[] data;
+    private int readPos = 0, writePos = 0;
+
+    MemoryConnection(int capacity) {
+        data = new byte[capacity];
+    }
+
+    void reset() {
+        readPos = writePos = 0;
+    }
+
+    @Override
+    public int recv(byte[] buffer, int offset, int size) throws EOFException {
+        if (readPos == writePos) throw new EOFException();
+        int read = Integer.min(size, writePos - readPos);
+        System.arraycopy(data, readPos, buffer, offset, read);
+        readPos += read;
+        return read;
+    }
+
+    @Override
+    public int send(byte[] buffer, int offset, int size) {
+        if (writePos + size > data.length) data = Arrays.copyOf(data, Integer.max(data.length * 2, writePos + size));
+        System.arraycopy(buffer, offset, data, writePos, size);
+        writePos += size;
+        return size;
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public boolean isOpen() {
+        return true;
+    }
+
+    @Override
+    public CloudConnection reconnect() {
+        throw new UnsupportedOperationException();
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -0,0 +1,62 @@
+package com.avevad.cloud9.benchmarks;
+
+import com.avevad.cloud9.core.CloudClient;
+import com.avevad.cloud9.core.CloudCommon.Node;
+import com.avevad.cloud9.testserver.TestServer;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class RoundTripBenchmark {
+    private static final int PIPELINE_DEPTH = 64;
+
+    @Param({"0", "1"})
+    public long latency;
+
+    private TestServer server;
+    private CloudClient client;
+    private Node home;
+
+    @Setup
+    public void setup() throws Exception {
+        server = Loopback.startServer();
+        server.setLatency(latency);
+        client = Loopback.login(server, "nio");
+        home = client.getHome();
+    }
+
+    @TearDown
+    public void tearDown() {
+        client.disconnect();
+        server.close();
+    }
+
+    @Benchmark
+    public Node getHome() throws Exception {
+        return client.getHome();
+    }
+
+    @Benchmark
+    public CloudClient.NodeInfo getNodeInfo() throws Exception {
+        return client.getNodeInfo(home);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(PIPELINE_DEPTH)
+    public List<CloudClient.NodeInfo> getNodeInfoPipelined() {
+        List<CompletableFuture<CloudClient.NodeInfo>> futures = new ArrayList<>(PIPELINE_DEPTH);
+        for (int i = 0; i < PIPELINE_DEPTH; i++) futures.add(client.getNodeInfoAsync(home));
+        List<CloudClient.NodeInfo> infos = new ArrayList<>(PIPELINE_DEPTH);
+        for (CompletableFuture<CloudClient.NodeInfo> future : futures) infos.add(future.join());
+        return infos;
+    }
+}
@@ -0,0 +1,84 @@
+package com.avevad.cloud9.benchmarks;
+
+import com.avevad.cloud9.core.CloudClient;
+import com.avevad.cloud9.core.CloudCommon.Node;
+import com.avevad.cloud9.testserver.MemoryTree;
+import com.avevad.cloud9.testserver.TestServer;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import static com.avevad.cloud9.core.CloudCommon.*;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TransferBenchmark {
+    @Param({"16777216"})
+    public int fileSize;
+
+    @Param({"4096", "65536", "1048576"})
+    public int bufferSize;
+
+    @Param({"nio", "tcp"})
+    public String connection;
+
+    private TestServer server;
+    private CloudClient client;
+    private Node file;
+    private byte[] array;
+    private ByteBuffer buffer;
+
+    @Setup
+    public void setup() throws Exception {
+        server = Loopback.startServer();
+        TestServer.User user = server.getUser(Loopback.LOGIN);
+        MemoryTree.Entry[] result = new MemoryTree.Entry[1];
+        server.tree.makeNode(user.home, "data", NODE_TYPE_FILE, user.login, result);
+        byte[] chunk = new byte[1024 * 1024];
+        for (int done = 0; done < fileSize; done += chunk.length)
+            server.tree.write(result[0], done, chunk, 0, Integer.min(chunk.length, fileSize - done));
+        file = result[0].node;
+        client = Loopback.login(server, connection);
+        array = new byte[bufferSize];
+        buffer = ByteBuffer.allocateDirect(bufferSize);
+    }
+
+    @TearDown
+    public void tearDown() {
+        client.disconnect();
+        server.close();
+    }
+
+    @Benchmark
+    public void longReadArray() throws Exception {
+        byte fd = client.openFD(file, FD_MODE_READ);
+        client.longReadFD(fd, fileSize, array, 0, bufferSize, read -> {
+        });
+        client.closeFD(fd);
+    }
+
+    @Benchmark
+    public void longReadBuffer() throws Exception {
+        byte fd = client.openFD(file, FD_MODE_READ);
+        buffer.clear();
+        client.longReadFD(fd, fileSize, buffer, read -> buffer.clear());
+        client.closeFD(fd);
+    }
+
+    @Benchmark
+    public void longWriteArray() throws Exception {
+        byte fd = client.openFD(file, FD_MODE_WRITE);
+        long[] left = {fileSize};
+        client.longWriteFD(fd, fileSize, array, 0, () -> {
+            int sent = (int) Long.min(bufferSize, left[0]);
+            left[0] -= sent;
+            return sent;
+        });
+        client.closeFD(fd);
+    }
+}
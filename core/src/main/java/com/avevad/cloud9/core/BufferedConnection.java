@@ -1,38 +1,99 @@
 package com.avevad.cloud9.core;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static com.avevad.cloud9.core.CloudConnection.Helper.sendExact;
+import static com.avevad.cloud9.core.CloudConnection.Helper.writeFile;
 
 public final class BufferedConnection implements CloudConnection {
     private final CloudConnection connection;
-    private final byte[] buffer;
-    private int bufferPos = 0;
+    private final byte[] sendBuffer;
+    private final byte[] recvBuffer;
+    private int sendPos = 0;
+    private int recvPos = 0, recvLimit = 0;
 
-    public BufferedConnection(CloudConnection connection, int bufferSize) {
+    public BufferedConnection(CloudConnection connection, int sendBufferSize, int recvBufferSize) {
         this.connection = connection;
-        buffer = new byte[bufferSize];
+        sendBuffer = new byte[sendBufferSize];
+        recvBuffer = new byte[recvBufferSize];
+    }
+
+    public BufferedConnection(CloudConnection connection, int bufferSize) {
+        this(connection, bufferSize, bufferSize);
     }
 
     @Override
     public int recv(byte[] data, int offset, int size) throws IOException {
-        return connection.recv(data, offset, size);
+        if (recvPos == recvLimit) {
+            if (size >= recvBuffer.length) return connection.recv(data, offset, size);
+            fill();
+        }
+        int read = Integer.min(size, recvLimit - recvPos);
+        System.arraycopy(recvBuffer, recvPos, data, offset, read);
+        recvPos += read;
+        return read;
     }
 
     @Override
     public int send(byte[] data, int offset, int size) throws IOException {
-        if (bufferPos + size > buffer.length) {
+        if (sendPos + size > sendBuffer.length) {
             flush();
         }
-        if (size > buffer.length) connection.send(data, offset, size);
+        if (size > sendBuffer.length) sendExact(connection, data, offset, size);
         else {
-            System.arraycopy(data, offset, buffer, bufferPos, size);
-            bufferPos += size;
+            System.arraycopy(data, offset, sendBuffer, sendPos, size);
+            sendPos += size;
         }
         return size;
     }
 
+    @Override
+    public int recv(ByteBuffer data) throws IOException {
+        if (recvPos == recvLimit) {
+            if (data.remaining() >= recvBuffer.length) return connection.recv(data);
+            fill();
+        }
+        int read = Integer.min(data.remaining(), recvLimit - recvPos);
+        data.put(recvBuffer, recvPos, read);
+        recvPos += read;
+        return read;
+    }
+
+    @Override
+    public int send(ByteBuffer data) throws IOException {
+        flush();
+        return connection.send(data);
+    }
+
+    @Override
+    public long send(ByteBuffer[] data) throws IOException {
+        flush();
+        return connection.send(data);
+    }
+
+    @Override
+    public long recv(FileChannel file, long position, long count, ByteBuffer scratch) throws IOException {
+        if (recvPos == recvLimit) return connection.recv(file, position, count, scratch);
+        int read = (int) Long.min(count, recvLimit - recvPos);
+        ByteBuffer chunk = ByteBuffer.wrap(recvBuffer, recvPos, read);
+        writeFile(file, chunk, position - recvPos);
+        recvPos += read;
+        return read;
+    }
+
+    @Override
+    public long send(FileChannel file, long position, long count, ByteBuffer scratch) throws IOException {
+        flush();
+        return connection.send(file, position, count, scratch);
+    }
+
     @Override
     public void flush() throws IOException {
-        if (bufferPos != 0) connection.send(buffer, bufferPos);
+        if (sendPos != 0) sendExact(connection, sendBuffer, 0, sendPos);
+        sendPos = 0;
+        connection.flush();
     }
 
     @Override
@@ -41,11 +102,17 @@ public final class BufferedConnection implements CloudConnection {
     }
 
     public CloudConnection reconnect() throws IOException {
-        return new BufferedConnection(connection.reconnect(), buffer.length);
+        return new BufferedConnection(connection.reconnect(), sendBuffer.length, recvBuffer.length);
     }
 
     @Override
     public void close() {
         connection.close();
     }
+
+    private void fill() throws IOException {
+        recvPos = 0;
+        recvLimit = 0;
+        recvLimit = connection.recv(recvBuffer, 0, recvBuffer.length);
+    }
 }
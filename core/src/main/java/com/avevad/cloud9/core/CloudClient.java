@@ -1,92 +1,404 @@
 package com.avevad.cloud9.core;
 
+import com.avevad.cloud9.core.util.BufferPool;
+import com.avevad.cloud9.core.util.PendingTable;
+
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
 import java.util.stream.IntStream;
+import java.util.zip.Deflater;
 
 import static com.avevad.cloud9.core.CloudCommon.*;
 import static com.avevad.cloud9.core.CloudConnection.Helper.*;
 
 public final class CloudClient {
+    private static final int PENDING_TABLE_CAPACITY = 64;
+    private static final int FRAME_POOL_SIZE = 64;
+    private static final int NODE_INFO_SIZE = 1 + Long.BYTES + 1;
+    private static final int MAX_INFO_BATCH = 1024;
+    private static final int INIT_HEADER_SIZE = Short.BYTES + Long.BYTES;
+    private static final int REQUEST_HEADER_SIZE = Integer.BYTES + Short.BYTES + Long.BYTES;
+    private static final int RESPONSE_HEADER_SIZE = Integer.BYTES + Short.BYTES + Long.BYTES;
+    private static final BufferPool RESPONSE_POOL = new BufferPool(512, 256 * 1024, 16);
+    private static final byte[] EMPTY_BODY = new byte[0];
+    private static final int RECONNECT_ATTEMPTS = 8;
+    private static final long RECONNECT_BASE_DELAY = 100; // 100 ms
+    private static final long RECONNECT_MAX_DELAY = 10 * 1000; // 10 seconds
+
     private static final class ServerResponse {
         public final short status;
         public final int size;
         public final byte[] body;
 
-        public ServerResponse(short status, byte[] body) {
+        public ServerResponse(short status, byte[] body, int size) {
             this.status = status;
             this.body = body;
-            this.size = body.length;
+            this.size = size;
+        }
+
+        public void release() {
+            if (body != null && body != EMPTY_BODY) RESPONSE_POOL.release(body);
+        }
+    }
+
+    private static class PendingResponse extends CompletableFuture<ServerResponse> {
+        private final byte[] array;
+        private final int offset, capacity;
+        private final ByteBuffer buffer;
+        private int id;
+        private short cmd;
+        private RequestBody body;
+
+        public PendingResponse() {
+            this(null, 0, 0, null);
+        }
+
+        public PendingResponse(byte[] array, int offset, int capacity, ByteBuffer buffer) {
+            this.array = array;
+            this.offset = offset;
+            this.capacity = capacity;
+            this.buffer = buffer;
+        }
+
+        public boolean isReplayable() {
+            return isIdempotent(cmd);
+        }
+
+        public boolean receive(CloudConnection connection, short status, int size) throws IOException {
+            if (status != REQUEST_OK) return false;
+            if (array != null && size <= capacity) {
+                recvExact(connection, array, offset, size);
+                return true;
+            }
+            if (buffer != null && size <= buffer.remaining()) {
+                int limit = buffer.limit();
+                buffer.limit(buffer.position() + size);
+                try {
+                    recvExact(connection, buffer);
+                } finally {
+                    buffer.limit(limit);
+                }
+                return true;
+            }
+            return false;
+        }
+    }
+
+    private static final class DirectoryStream extends PendingResponse {
+        private static final int CHUNK_SIZE = 64 * 1024;
+        private static final int MAX_QUEUED_CHUNKS = 4;
+        private static final Chunk END = new Chunk(null, 0);
+
+        private final ArrayDeque<Chunk> chunks = new ArrayDeque<>();
+        private int queued = 0;
+        private boolean abandoned = false;
+        private volatile boolean started = false;
+
+        @Override
+        public boolean isReplayable() {
+            return !started && super.isReplayable();
+        }
+
+        @Override
+        public boolean receive(CloudConnection connection, short status, int size) throws IOException {
+            if (status != REQUEST_OK) return false;
+            started = true;
+            int done = 0;
+            while (done < size) {
+                int chunkSize = Integer.min(CHUNK_SIZE, size - done);
+                byte[] data = RESPONSE_POOL.acquire(chunkSize);
+                recvExact(connection, data, 0, chunkSize);
+                done += chunkSize;
+                synchronized (this) {
+                    while (!abandoned && queued == MAX_QUEUED_CHUNKS) waitUninterruptibly();
+                    if (abandoned) RESPONSE_POOL.release(data);
+                    else {
+                        chunks.add(new Chunk(data, chunkSize));
+                        queued++;
+                        notifyAll();
+                    }
+                }
+            }
+            return true;
+        }
+
+        public synchronized void finish() {
+            chunks.add(END);
+            notifyAll();
+        }
+
+        public void parse(DirectoryEntryViewCallback callback) throws IOException, RequestException {
+            DirectoryEntryView view = new DirectoryEntryView();
+            byte[] carry = new byte[NODE_ID_SIZE + 1 + 0xFF];
+            int carrySize = 0;
+            while (true) {
+                Chunk chunk = take();
+                if (chunk == END) {
+                    if (carrySize != 0) throw new IOException("truncated directory entry");
+                    return;
+                }
+                try {
+                    byte[] data = chunk.data;
+                    int pos = 0;
+                    while (pos < chunk.size) {
+                        if (carrySize == 0) {
+                            int available = chunk.size - pos;
+                            if (available > NODE_ID_SIZE && available >= NODE_ID_SIZE + 1 + (0xFF & data[pos + NODE_ID_SIZE])) {
+                                view.set(data, pos);
+                                pos += NODE_ID_SIZE + 1 + view.nameSize();
+                                if (!callback.call(view)) return;
+                                continue;
+                            }
+                        }
+                        int need = carrySize <= NODE_ID_SIZE ? NODE_ID_SIZE + 1 : NODE_ID_SIZE + 1 + (0xFF & carry[NODE_ID_SIZE]);
+                        int copied = Integer.min(need - carrySize, chunk.size - pos);
+                        System.arraycopy(data, pos, carry, carrySize, copied);
+                        carrySize += copied;
+                        pos += copied;
+                        if (carrySize > NODE_ID_SIZE && carrySize == NODE_ID_SIZE + 1 + (0xFF & carry[NODE_ID_SIZE])) {
+                            view.set(carry, 0);
+                            carrySize = 0;
+                            if (!callback.call(view)) return;
+                        }
+                    }
+                } finally {
+                    RESPONSE_POOL.release(chunk.data);
+                    synchronized (this) {
+                        queued--;
+                        notifyAll();
+                    }
+                }
+            }
+        }
+
+        public synchronized void abandon() {
+            abandoned = true;
+            Chunk chunk;
+            while ((chunk = chunks.poll()) != null) {
+                if (chunk == END) continue;
+                RESPONSE_POOL.release(chunk.data);
+                queued--;
+            }
+            notifyAll();
+        }
+
+        private synchronized Chunk take() {
+            while (chunks.isEmpty()) waitUninterruptibly();
+            return chunks.poll();
+        }
+
+        private void waitUninterruptibly() {
+            try {
+                wait();
+            } catch (InterruptedException ignored) {
+            }
+        }
+
+        private static final class Chunk {
+            public final byte[] data;
+            public final int size;
+
+            public Chunk(byte[] data, int size) {
+                this.data = data;
+                this.size = size;
+            }
         }
     }
 
-    private final CloudConnection connection;
+    private volatile CloudConnection connection;
+    private long capabilities = 0;
+    private boolean exchangeUnsupported = false;
+    private boolean compressed = false;
     private final Thread listener;
-    private final Map<Integer, ServerResponse> responses = new HashMap<>();
-    private boolean connected = true;
-    private final Object notifier = new Object();
+    private final PendingTable<PendingResponse> pending = new PendingTable<>(PENDING_TABLE_CAPACITY);
     private final Object apiLock = new Object();
     private final Object ldtmLock = new Object();
+    private final Object queueLock = new Object();
+    private final ArrayDeque<FrameBuffer> sendQueue = new ArrayDeque<>();
+    private final List<FrameBuffer> sendBatch = new ArrayList<>();
+    private final BlockingQueue<FrameBuffer> framePool = new ArrayBlockingQueue<>(FRAME_POOL_SIZE);
+    private final Set<Short> unsupportedCommands = ConcurrentHashMap.newKeySet();
+    private final AtomicReferenceArray<Node> writeNodes = new AtomicReferenceArray<>(0x100);
+    private volatile MetadataCache metadataCache = null;
+    private volatile Node token = null;
+    private volatile boolean autoReconnect = false;
+    private volatile boolean closing = false;
+    private Thread sendTurn = null;
     private int lastId = 0;
 
-    public CloudClient(CloudConnection connection, String login, PasswordCallback passwordCallback) throws IOException, InitException, ProtocolException {
+    public CloudClient(CloudConnection connection, String login, PasswordCallback passwordCallback, boolean compress) throws IOException, InitException, ProtocolException {
         listener = new Thread(this::listenerRoutine);
         this.connection = connection;
         negotiate();
-        sendInt16(connection, INIT_CMD_AUTH);
+        exchangeCapabilities();
+        if (compress) compress();
         String password = passwordCallback.promptPassword();
-        int loginSize = stringSize(login);
-        int passwordSize = stringSize(password);
-        int size = 1 + loginSize + passwordSize;
-        sendInt64(connection, size);
-        sendByte(connection, (byte) loginSize);
-        sendString(connection, login);
-        sendString(connection, password);
-        connection.flush();
-        short status = recvInt16(connection);
-        if (status != INIT_OK) throw new InitException(status);
+        init(INIT_CMD_AUTH, frame -> frame.putShortString(login).putString(password));
         listener.start();
     }
 
+    public CloudClient(CloudConnection connection, String login, PasswordCallback passwordCallback) throws IOException, InitException, ProtocolException {
+        this(connection, login, passwordCallback, false);
+    }
+
     public CloudClient(CloudClient client) throws IOException, InitException, ProtocolException, RequestException {
         listener = new Thread(this::listenerRoutine);
         this.connection = client.connection.reconnect();
+        this.metadataCache = client.metadataCache;
+        this.exchangeUnsupported = client.exchangeUnsupported;
         negotiate();
-        sendInt16(connection, INIT_CMD_TOKEN);
-        sendInt64(connection, NODE_ID_SIZE);
-        client.getToken().sendNode(connection);
-        connection.flush();
-        short status = recvInt16(connection);
-        if (status != INIT_OK) throw new InitException(status);
+        exchangeCapabilities();
+        if (client.compressed) compress();
+        Node token = client.token != null ? client.token : client.getToken();
+        init(INIT_CMD_TOKEN, frame -> frame.putNode(token));
+        this.token = token;
+        this.autoReconnect = client.autoReconnect;
         listener.start();
     }
 
     private void listenerRoutine() {
+        byte[] header = new byte[RESPONSE_HEADER_SIZE];
+        PendingResponse future = null;
         try {
             while (true) {
-                int id = recvInt32(connection);
-                short status = recvInt16(connection);
-                int size = (int) recvInt64(connection);
-                byte[] body = new byte[size];
-                recvExact(connection, body, 0, size);
-                synchronized (notifier) {
-                    responses.put(id, new ServerResponse(status, body));
-                    notifier.notifyAll();
-                }
-                if (status == REQUEST_SWITCH_OK) {
-                    synchronized (ldtmLock) {
+                CloudConnection connection = this.connection;
+                try {
+                    recvExact(connection, header, 0, RESPONSE_HEADER_SIZE);
+                    int id = bufRecvInt32(header, 0);
+                    short status = bufRecvInt16(header, Integer.BYTES);
+                    int size = (int) bufRecvInt64(header, Integer.BYTES + Short.BYTES);
+                    future = pending.remove(id);
+                    ServerResponse response;
+                    if (future != null && future.receive(connection, status, size))
+                        response = new ServerResponse(status, null, size);
+                    else {
+                        byte[] body = size == 0 ? EMPTY_BODY : RESPONSE_POOL.acquire(size);
+                        recvExact(connection, body, 0, size);
+                        response = new ServerResponse(status, body, size);
+                    }
+                    if (future != null) future.complete(response);
+                    else response.release();
+                    future = null;
+                    if (status == REQUEST_SWITCH_OK) {
+                        synchronized (ldtmLock) {
+                        }
                     }
+                } catch (IOException e) {
+                    if (!isResilient()) throw e;
+                    PendingResponse interrupted = future;
+                    future = null;
+                    reconnect(interrupted, e);
                 }
             }
         } catch (IOException e) {
-            connected = false;
-            synchronized (notifier) {
-                notifier.notifyAll();
+            if (future != null) future.completeExceptionally(e);
+            for (PendingResponse pendingFuture : pending.close()) pendingFuture.completeExceptionally(e);
+        }
+    }
+
+    private boolean isResilient() {
+        return autoReconnect && token != null && !closing;
+    }
+
+    private void reconnect(PendingResponse interrupted, IOException cause) throws IOException {
+        connection.close();
+        List<PendingResponse> replays = new ArrayList<>();
+        if (interrupted != null) {
+            if (interrupted.isReplayable()) replays.add(interrupted);
+            else interrupted.completeExceptionally(new SessionResetException(cause));
+        }
+        salvage(replays, cause);
+        synchronized (apiLock) {
+            acquireSendTurn();
+            try {
+                boolean reconnected = reestablish();
+                salvage(replays, cause);
+                if (!reconnected) {
+                    for (PendingResponse future : replays) future.completeExceptionally(cause);
+                    throw cause;
+                }
+                for (int fd = 0; fd < writeNodes.length(); fd++) writeNodes.set(fd, null);
+                synchronized (queueLock) {
+                    for (PendingResponse future : replays) {
+                        FrameBuffer frame = encode(future.cmd, future.body);
+                        if (!enqueue(frame, future)) {
+                            releaseFrame(frame);
+                            future.completeExceptionally(cause);
+                            continue;
+                        }
+                        frame.detachTail();
+                        sendQueue.add(frame);
+                    }
+                }
+            } finally {
+                releaseSendTurn();
             }
         }
     }
 
+    private void salvage(List<PendingResponse> replays, IOException cause) {
+        List<PendingResponse> failed = new ArrayList<>();
+        synchronized (queueLock) {
+            Set<Integer> unsent = new HashSet<>();
+            for (FrameBuffer frame : sendQueue) unsent.add(frame.id);
+            for (PendingResponse future : pending.removeAll()) {
+                if (unsent.contains(future.id)) pending.put(future.id, future);
+                else if (future.isReplayable()) replays.add(future);
+                else failed.add(future);
+            }
+        }
+        for (PendingResponse future : failed) future.completeExceptionally(new SessionResetException(cause));
+    }
+
+    private boolean reestablish() {
+        boolean compress = compressed;
+        for (int attempt = 0; attempt < RECONNECT_ATTEMPTS && !closing; attempt++) {
+            long delay = Long.min(RECONNECT_MAX_DELAY, RECONNECT_BASE_DELAY << attempt);
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1));
+            long remaining;
+            while ((remaining = deadline - System.nanoTime()) > 0) {
+                try {
+                    TimeUnit.NANOSECONDS.sleep(remaining);
+                } catch (InterruptedException ignored) {
+                }
+            }
+            try {
+                connection = connection.reconnect();
+                compressed = false;
+                negotiate();
+                exchangeCapabilities();
+                if (compress) compress();
+                init(INIT_CMD_TOKEN, frame -> frame.putNode(token));
+                return true;
+            } catch (IOException e) {
+                connection.close();
+            } catch (InitException | ProtocolException e) {
+                connection.close();
+                return false;
+            }
+        }
+        return false;
+    }
+
     private void negotiate() throws IOException, ProtocolException {
         byte[] clientHeader = new byte[CLOUD_FULL_HEADER_LENGTH];
         System.arraycopy(CLOUD_HEADER, 0, clientHeader, 0, CLOUD_HEADER_LENGTH);
@@ -101,380 +413,862 @@ public final class CloudClient {
             throw new ProtocolException("version mismatch");
     }
 
-    private ServerResponse waitResponse(int id) throws IOException {
-        synchronized (notifier) {
-            while (connected && !responses.containsKey(id)) {
+    private void exchangeCapabilities() throws IOException, ProtocolException {
+        if (!exchangeUnsupported) {
+            try {
+                init(INIT_CMD_CAPABILITIES, frame -> frame.putInt64(CLOUD_CAPABILITIES));
+                capabilities = recvInt64(connection);
+                if (!hasCapability(CAPABILITY_FD_SEEK)) unsupportedCommands.add(REQUEST_CMD_FD_SEEK);
+                if (!hasCapability(CAPABILITY_NODE_INFO_BATCH)) unsupportedCommands.add(REQUEST_CMD_GET_NODE_INFO_BATCH);
+                if (!hasCapability(CAPABILITY_LIST_DIRECTORY_INFO)) unsupportedCommands.add(REQUEST_CMD_LIST_DIRECTORY_INFO);
+                return;
+            } catch (InitException e) {
+                exchangeUnsupported = true;
+            } catch (IOException e) {
+                // servers that drop the session on an unknown init command get a fresh one without the exchange
+                CloudConnection dropped = connection;
+                connection = dropped.reconnect();
+                dropped.close();
+                negotiate();
+                exchangeUnsupported = true;
+            }
+        }
+        // servers predating the exchange only speak the baseline protocol; optional requests are probed one by one instead
+        capabilities = 0;
+    }
+
+    private void compress() throws IOException {
+        if (!hasCapability(CAPABILITY_COMPRESS_DEFLATE)) return;
+        try {
+            init(INIT_CMD_COMPRESS, frame -> frame.putByte(COMPRESSION_DEFLATE));
+        } catch (InitException e) {
+            return;
+        }
+        connection = new DeflateConnection(connection, Deflater.BEST_SPEED);
+        compressed = true;
+    }
+
+    private void init(short cmd, RequestBody body) throws IOException, InitException {
+        FrameBuffer frame = new FrameBuffer();
+        frame.putInt16(cmd).putInt64(0);
+        body.encode(frame);
+        frame.setInt64(Short.BYTES, frame.size() - INIT_HEADER_SIZE);
+        frame.send(connection);
+        connection.flush();
+        short status = recvInt16(connection);
+        if (status != INIT_OK) throw new InitException(status);
+    }
+
+    private CompletableFuture<ServerResponse> request(short cmd, RequestBody body) {
+        return request(cmd, body, new PendingResponse());
+    }
+
+    private CompletableFuture<ServerResponse> request(short cmd, RequestBody body, PendingResponse future) {
+        FrameBuffer frame = encode(cmd, body);
+        future.cmd = cmd;
+        future.body = body;
+        Thread current = Thread.currentThread();
+        boolean acquired;
+        synchronized (queueLock) {
+            if (!enqueue(frame, future)) {
+                releaseFrame(frame);
+                future.completeExceptionally(new IOException("not connected"));
+                return future;
+            }
+            if (sendTurn == current) acquired = false;
+            else if (sendTurn == null) {
+                sendTurn = current;
+                acquired = true;
+            } else {
+                frame.detachTail();
+                sendQueue.add(frame);
+                return future;
+            }
+            sendQueue.add(frame);
+        }
+        drainSendQueue(acquired);
+        return future;
+    }
+
+    private FrameBuffer encode(short cmd, RequestBody body) {
+        FrameBuffer frame = framePool.poll();
+        if (frame == null) frame = new FrameBuffer();
+        frame.putInt32(0).putInt16(cmd).putInt64(0);
+        body.encode(frame);
+        frame.setInt64(Integer.BYTES + Short.BYTES, frame.size() - REQUEST_HEADER_SIZE);
+        return frame;
+    }
+
+    private boolean enqueue(FrameBuffer frame, PendingResponse future) {
+        int id = ++lastId;
+        future.id = id;
+        if (!pending.put(id, future)) return false;
+        frame.id = id;
+        frame.setInt32(0, id);
+        return true;
+    }
+
+    private void drainSendQueue(boolean release) {
+        while (true) {
+            synchronized (queueLock) {
+                if (sendQueue.isEmpty()) {
+                    if (release) {
+                        sendTurn = null;
+                        queueLock.notifyAll();
+                    }
+                    return;
+                }
+                sendBatch.addAll(sendQueue);
+                sendQueue.clear();
+            }
+            CloudConnection connection = this.connection;
+            IOException error = null;
+            try {
+                for (FrameBuffer frame : sendBatch) frame.send(connection);
+                connection.flush();
+            } catch (IOException e) {
+                error = e;
+            }
+            boolean resilient = error != null && isResilient();
+            List<PendingResponse> retained = resilient ? new ArrayList<>() : null;
+            for (FrameBuffer frame : sendBatch) {
+                if (error != null) {
+                    PendingResponse future = pending.remove(frame.id);
+                    if (future != null && resilient && future.isReplayable()) retained.add(future);
+                    else if (future != null) future.completeExceptionally(resilient ? new SessionResetException(error) : error);
+                }
+                releaseFrame(frame);
+            }
+            sendBatch.clear();
+            if (resilient) {
+                synchronized (queueLock) {
+                    for (PendingResponse future : retained) {
+                        if (!pending.put(future.id, future)) future.completeExceptionally(error);
+                    }
+                }
+                connection.close();
+            }
+        }
+    }
+
+    private void acquireSendTurn() {
+        synchronized (queueLock) {
+            while (sendTurn != null) {
                 try {
-                    notifier.wait();
-                } catch (InterruptedException e) {
+                    queueLock.wait();
+                } catch (InterruptedException ignored) {
+                }
+            }
+            sendTurn = Thread.currentThread();
+        }
+    }
+
+    private void releaseSendTurn() {
+        drainSendQueue(true);
+    }
+
+    private void releaseFrame(FrameBuffer frame) {
+        frame.reset();
+        framePool.offer(frame);
+    }
+
+    private <T> CompletableFuture<T> request(short cmd, RequestBody body, ResponseDecoder<T> decoder) {
+        return request(cmd, body, new PendingResponse(), decoder);
+    }
+
+    private <T> CompletableFuture<T> request(short cmd, RequestBody body, PendingResponse future, ResponseDecoder<T> decoder) {
+        return request(cmd, body, future).thenApply(response -> {
+            try {
+                return decoder.decode(response);
+            } catch (RequestException e) {
+                throw new CompletionException(e);
+            } finally {
+                response.release();
+            }
+        });
+    }
+
+    private <T> CompletableFuture<T> optionalRequest(short cmd, RequestBody body, ResponseDecoder<T> decoder, Supplier<CompletableFuture<T>> fallback) {
+        if (unsupportedCommands.contains(cmd)) return fallback.get();
+        return request(cmd, body).thenCompose(response -> {
+            try {
+                if (response.status == REQUEST_ERR_INVALID_CMD || response.status == REQUEST_ERR_NOT_SUPPORTED) {
+                    unsupportedCommands.add(cmd);
+                    return fallback.get();
                 }
+                return CompletableFuture.completedFuture(decoder.decode(response));
+            } catch (RequestException e) {
+                throw new CompletionException(e);
+            } finally {
+                response.release();
+            }
+        });
+    }
+
+    private <T> CompletableFuture<T> cached(byte kind, Object key, Supplier<CompletableFuture<T>> request) {
+        MetadataCache cache = metadataCache;
+        if (cache == null) return request.get();
+        T value = cache.get(kind, key);
+        if (value != null) return CompletableFuture.completedFuture(value);
+        long generation = cache.generation();
+        return request.get().thenApply(result -> {
+            cache.put(generation, kind, key, result);
+            return result;
+        });
+    }
+
+    private <T> CompletableFuture<T> invalidating(CompletableFuture<T> future, Consumer<MetadataCache> invalidation) {
+        MetadataCache cache = metadataCache;
+        if (cache == null) return future;
+        return future.whenComplete((result, error) -> invalidation.accept(cache));
+    }
+
+    private void invalidateWritten(byte fd) {
+        MetadataCache cache = metadataCache;
+        Node node = writeNodes.get(0xFF & fd);
+        if (cache != null && node != null) cache.infoChanged(node);
+    }
+
+    private <T> CompletableFuture<T> singleNodeRequest(short cmd, Node node, ResponseDecoder<T> decoder) {
+        return request(cmd, frame -> frame.putNode(node), decoder);
+    }
+
+    private <T> CompletableFuture<T> singleStringRequest(short cmd, String string, ResponseDecoder<T> decoder) {
+        return request(cmd, frame -> frame.putString(string), decoder);
+    }
+
+    private static <T> T await(CompletableFuture<T> future) throws IOException, RequestException {
+        while (true) {
+            try {
+                return future.get();
+            } catch (InterruptedException ignored) {
+            } catch (ExecutionException e) {
+                Throwable cause = e.getCause();
+                if (cause instanceof IOException) throw (IOException) cause;
+                if (cause instanceof RequestException) throw (RequestException) cause;
+                if (cause instanceof RuntimeException) throw (RuntimeException) cause;
+                throw new RuntimeException(cause);
             }
         }
-        if (!connected) throw new IOException("not connected");
-        return responses.remove(id);
+    }
+
+    private static ServerResponse checkStatus(ServerResponse response) throws RequestException {
+        if (response.status != REQUEST_OK) {
+            throw new RequestException(response.status);
+        }
+        return response;
+    }
+
+    private static Void checkVoid(ServerResponse response) throws RequestException {
+        checkStatus(response);
+        return null;
+    }
+
+    private static Node checkNode(ServerResponse response) throws RequestException {
+        return Node.bufRecvNode(checkStatus(response).body, 0);
+    }
+
+    private static String checkString(ServerResponse response) throws RequestException {
+        return bufRecvString(checkStatus(response).body, 0, response.size);
     }
 
     public void disconnect() {
+        closing = true;
         try {
-            synchronized (apiLock) {
-                sendInt32(connection, ++lastId);
-                sendInt16(connection, REQUEST_CMD_GOODBYE);
-                sendInt64(connection, 0);
-                connection.flush();
-                waitResponse(lastId);
-            }
+            await(request(REQUEST_CMD_GOODBYE, frame -> {
+            }));
             connection.close();
-        } catch (IOException e) {
+        } catch (IOException | RequestException e) {
         }
     }
 
     public void close() {
+        closing = true;
         connection.close();
     }
 
-    private ServerResponse singleNodeRequest(short cmd, Node node) throws IOException, RequestException {
-        synchronized (apiLock) {
-            sendInt32(connection, ++lastId);
-            sendInt16(connection, cmd);
-            sendInt64(connection, NODE_ID_SIZE);
-            node.sendNode(connection);
-            connection.flush();
-            return waitResponse(lastId);
-        }
+    public void setAutoReconnect(boolean autoReconnect) throws IOException, RequestException {
+        if (autoReconnect && token == null) token = getToken();
+        this.autoReconnect = autoReconnect;
     }
 
-    private ServerResponse singleStringRequest(short cmd, String string) throws IOException, RequestException {
-        synchronized (apiLock) {
-            sendInt32(connection, ++lastId);
-            sendInt16(connection, cmd);
-            sendInt64(connection, stringSize(string));
-            sendString(connection, string);
-            connection.flush();
-            return waitResponse(lastId);
-        }
+    public boolean isAutoReconnect() {
+        return autoReconnect;
+    }
+
+    public long getCapabilities() {
+        return capabilities;
+    }
+
+    public boolean hasCapability(long capability) {
+        return (capabilities & capability) == capability;
+    }
+
+    public boolean isCompressed() {
+        return compressed;
+    }
+
+    public boolean isConnected() {
+        return !pending.isClosed() && connection.isOpen();
+    }
+
+    /**
+     * Makes a full round trip to the server, bypassing the metadata cache.
+     */
+    public void ping() throws IOException, RequestException {
+        await(singleStringRequest(REQUEST_CMD_GET_HOME, "", CloudClient::checkNode));
+    }
+
+    public void setMetadataCache(MetadataCache metadataCache) {
+        this.metadataCache = metadataCache;
+    }
+
+    public MetadataCache getMetadataCache() {
+        return metadataCache;
+    }
+
+    public CompletableFuture<Node> getHomeAsync(String user) {
+        return cached(MetadataCache.HOME, user, () -> singleStringRequest(REQUEST_CMD_GET_HOME, user, CloudClient::checkNode));
     }
 
     public Node getHome(String user) throws IOException, RequestException {
-        ServerResponse response = singleStringRequest(REQUEST_CMD_GET_HOME, user);
-        if (response.status != REQUEST_OK) {
-            throw new RequestException(response.status);
-        }
-        return Node.bufRecvNode(response.body, 0);
+        return await(getHomeAsync(user));
+    }
+
+    public CompletableFuture<Node> getHomeAsync() {
+        return getHomeAsync("");
     }
 
     public Node getHome() throws IOException, RequestException {
         return getHome("");
     }
 
+    public CompletableFuture<List<DirectoryEntry>> listDirectoryAsync(Node node) {
+        MetadataCache cache = metadataCache;
+        if (cache == null) return fetchDirectory(node);
+        List<DirectoryEntry> cached = cache.get(MetadataCache.LISTING, node);
+        if (cached != null) return CompletableFuture.completedFuture(cached);
+        long generation = cache.generation();
+        return fetchDirectory(node).thenApply(entries -> {
+            cache.putListing(generation, node, entries);
+            return entries;
+        });
+    }
+
+    private CompletableFuture<List<DirectoryEntry>> fetchDirectory(Node node) {
+        return singleNodeRequest(REQUEST_CMD_LIST_DIRECTORY, node, response -> {
+            checkStatus(response);
+            List<DirectoryEntry> entries = new ArrayList<>();
+            int pos = 0;
+            while (pos < response.size) {
+                Node child = Node.bufRecvNode(response.body, pos);
+                pos += NODE_ID_SIZE;
+                int nameSize = 0xFF & response.body[pos];
+                pos++;
+                String name = bufRecvString(response.body, pos, nameSize);
+                pos += nameSize;
+                entries.add(new DirectoryEntry(child, name));
+            }
+            return Collections.unmodifiableList(entries);
+        });
+    }
+
     public void listDirectory(Node node, DirectoryEntryCallback callback) throws IOException, RequestException {
-        ServerResponse response = singleNodeRequest(REQUEST_CMD_LIST_DIRECTORY, node);
-        if (response.status != REQUEST_OK) {
-            throw new RequestException(response.status);
+        for (DirectoryEntry entry : await(listDirectoryAsync(node))) callback.call(entry.node, entry.name);
+    }
+
+    public void listDirectory(Node node, DirectoryEntryViewCallback callback) throws IOException, RequestException {
+        MetadataCache cache = metadataCache;
+        List<DirectoryEntry> cached = cache == null ? null : cache.get(MetadataCache.LISTING, node);
+        if (cached != null) {
+            DirectoryEntryView view = new DirectoryEntryView();
+            for (DirectoryEntry entry : cached) {
+                view.set(entry);
+                if (!callback.call(view)) return;
+            }
+            return;
         }
-        int pos = 0;
-        while (pos < response.size) {
-            Node child = Node.bufRecvNode(response.body, pos);
-            pos += NODE_ID_SIZE;
-            int nameSize = 0xFF & response.body[pos];
-            pos++;
-            String name = bufRecvString(response.body, pos, nameSize);
-            pos += nameSize;
-            callback.call(child, name);
+        DirectoryStream stream = new DirectoryStream();
+        CompletableFuture<ServerResponse> future = request(REQUEST_CMD_LIST_DIRECTORY, frame -> frame.putNode(node), stream);
+        future.whenComplete((response, error) -> stream.finish());
+        try {
+            stream.parse(callback);
+        } finally {
+            stream.abandon();
         }
+        ServerResponse response = await(future);
+        response.release();
+        checkStatus(response);
+    }
+
+    public CompletableFuture<Node> getNodeParentAsync(Node node) {
+        return cached(MetadataCache.PARENT, node, () -> singleNodeRequest(REQUEST_CMD_GET_PARENT, node, response -> {
+            checkStatus(response);
+            return response.size == 0 ? null : Node.bufRecvNode(response.body, 0);
+        }));
     }
 
     public Node getNodeParent(Node node) throws IOException, RequestException {
-        ServerResponse response = singleNodeRequest(REQUEST_CMD_GET_PARENT, node);
-        if (response.status != REQUEST_OK) {
-            throw new RequestException(response.status);
-        }
-        return response.size == 0 ? null : Node.bufRecvNode(response.body, 0);
+        return await(getNodeParentAsync(node));
+    }
+
+    public CompletableFuture<Node> makeNodeAsync(Node parent, String name, NodeType type) {
+        return invalidating(request(REQUEST_CMD_MAKE_NODE, frame -> frame.putNode(parent).putShortString(name).putByte(type.id),
+                CloudClient::checkNode), cache -> cache.directoryChanged(parent));
     }
 
     public Node makeNode(Node parent, String name, NodeType type) throws IOException, RequestException {
-        synchronized (apiLock) {
-            int nameSize = stringSize(name);
-            sendInt32(connection, ++lastId);
-            sendInt16(connection, REQUEST_CMD_MAKE_NODE);
-            sendInt64(connection, NODE_ID_SIZE + 1 + nameSize + 1);
-            parent.sendNode(connection);
-            sendByte(connection, (byte) nameSize);
-            sendString(connection, name);
-            sendByte(connection, type.id);
-            connection.flush();
-            ServerResponse response = waitResponse(lastId);
-            if (response.status != REQUEST_OK) {
-                throw new RequestException(response.status);
-            }
-            return Node.bufRecvNode(response.body, 0);
-        }
+        return await(makeNodeAsync(parent, name, type));
+    }
+
+    public CompletableFuture<String> getNodeOwnerAsync(Node node) {
+        return singleNodeRequest(REQUEST_CMD_GET_NODE_OWNER, node, CloudClient::checkString);
     }
 
     public String getNodeOwner(Node node) throws IOException, RequestException {
-        ServerResponse response = singleNodeRequest(REQUEST_CMD_GET_NODE_OWNER, node);
-        if (response.status != REQUEST_OK) {
-            throw new RequestException(response.status);
-        }
-        return bufRecvString(response.body, 0, response.size);
+        return await(getNodeOwnerAsync(node));
+    }
+
+    public CompletableFuture<Byte> openFDAsync(Node node, byte mode) {
+        return request(REQUEST_CMD_FD_OPEN, frame -> frame.putNode(node).putByte(mode), response -> {
+            byte fd = checkStatus(response).body[0];
+            writeNodes.set(0xFF & fd, (mode & FD_MODE_WRITE) != 0 ? node : null);
+            return fd;
+        });
     }
 
     public byte openFD(Node node, byte mode) throws IOException, RequestException {
-        synchronized (apiLock) {
-            sendInt32(connection, ++lastId);
-            sendInt16(connection, REQUEST_CMD_FD_OPEN);
-            sendInt64(connection, NODE_ID_SIZE + 1);
-            node.sendNode(connection);
-            sendByte(connection, mode);
-            connection.flush();
-            ServerResponse response = waitResponse(lastId);
-            if (response.status != REQUEST_OK) {
-                throw new RequestException(response.status);
-            }
-            return response.body[0];
-        }
+        return await(openFDAsync(node, mode));
+    }
+
+    public CompletableFuture<Void> closeFDAsync(byte fd) {
+        return request(REQUEST_CMD_FD_CLOSE, frame -> frame.putByte(fd), response -> {
+            invalidateWritten(fd);
+            writeNodes.set(0xFF & fd, null);
+            return checkVoid(response);
+        });
     }
 
     public void closeFD(byte fd) throws IOException, RequestException {
-        synchronized (apiLock) {
-            sendInt32(connection, ++lastId);
-            sendInt16(connection, REQUEST_CMD_FD_CLOSE);
-            sendInt64(connection, 1);
-            sendByte(connection, fd);
-            connection.flush();
-            ServerResponse response = waitResponse(lastId);
-            if (response.status != REQUEST_OK) {
-                throw new RequestException(response.status);
-            }
-        }
+        await(closeFDAsync(fd));
+    }
+
+    public CompletableFuture<Integer> readFDAsync(byte fd, byte[] buffer, int offset, int size) {
+        return request(REQUEST_CMD_FD_READ, frame -> frame.putByte(fd).putInt32(size),
+                new PendingResponse(buffer, offset, size, null), response -> {
+                    checkStatus(response);
+                    if (response.body != null)
+                        System.arraycopy(response.body, 0, buffer, offset, Integer.min(response.size, size));
+                    return response.size;
+                });
     }
 
     public int readFD(byte fd, byte[] buffer, int offset, int size) throws IOException, RequestException {
-        synchronized (apiLock) {
-            sendInt32(connection, ++lastId);
-            sendInt16(connection, REQUEST_CMD_FD_READ);
-            sendInt64(connection, 1 + Integer.BYTES);
-            sendByte(connection, fd);
-            sendInt32(connection, size);
-            connection.flush();
-            ServerResponse response = waitResponse(lastId);
-            if (response.status != REQUEST_OK) {
-                throw new RequestException(response.status);
-            }
-            System.arraycopy(response.body, 0, buffer, offset, response.size);
-            return response.size;
-        }
+        return await(readFDAsync(fd, buffer, offset, size));
+    }
+
+    public CompletableFuture<Integer> readFDAsync(byte fd, ByteBuffer buffer) {
+        return request(REQUEST_CMD_FD_READ, frame -> frame.putByte(fd).putInt32(buffer.remaining()),
+                new PendingResponse(null, 0, 0, buffer), response -> {
+                    checkStatus(response);
+                    if (response.body != null) buffer.put(response.body, 0, Integer.min(response.size, buffer.remaining()));
+                    return response.size;
+                });
+    }
+
+    public int readFD(byte fd, ByteBuffer buffer) throws IOException, RequestException {
+        return await(readFDAsync(fd, buffer));
+    }
+
+    public CompletableFuture<Void> seekFDAsync(byte fd, long offset) {
+        return optionalRequest(REQUEST_CMD_FD_SEEK, frame -> frame.putByte(fd).putInt64(offset), CloudClient::checkVoid, () -> {
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            future.completeExceptionally(new RequestException(REQUEST_ERR_NOT_SUPPORTED));
+            return future;
+        });
+    }
+
+    public void seekFD(byte fd, long offset) throws IOException, RequestException {
+        await(seekFDAsync(fd, offset));
+    }
+
+    public CompletableFuture<Void> writeFDAsync(byte fd, byte[] buffer, int offset, int size) {
+        return invalidating(request(REQUEST_CMD_FD_WRITE, frame -> frame.putByte(fd).putTail(buffer, offset, size), CloudClient::checkVoid),
+                cache -> invalidateWritten(fd));
     }
 
     public void writeFD(byte fd, byte[] buffer, int offset, int size) throws IOException, RequestException {
-        synchronized (apiLock) {
-            sendInt32(connection, ++lastId);
-            sendInt16(connection, REQUEST_CMD_FD_WRITE);
-            sendInt64(connection, 1 + size);
-            sendByte(connection, fd);
-            sendExact(connection, buffer, offset, size);
-            connection.flush();
-            ServerResponse response = waitResponse(lastId);
-            if (response.status != REQUEST_OK) {
-                throw new RequestException(response.status);
+        await(writeFDAsync(fd, buffer, offset, size));
+    }
+
+    private static NodeInfo bufRecvNodeInfo(byte[] buffer, int offset) {
+        return new NodeInfo(buffer[offset], bufRecvInt64(buffer, offset + 1), buffer[offset + 1 + Long.BYTES]);
+    }
+
+    public CompletableFuture<NodeInfo> getNodeInfoAsync(Node node) {
+        return cached(MetadataCache.INFO, node, () -> singleNodeRequest(REQUEST_CMD_GET_NODE_INFO, node, response -> bufRecvNodeInfo(checkStatus(response).body, 0)));
+    }
+
+    public NodeInfo getNodeInfo(Node node) throws IOException, RequestException {
+        return await(getNodeInfoAsync(node));
+    }
+
+    public CompletableFuture<List<NodeInfo>> getNodeInfoAsync(List<Node> nodes) {
+        MetadataCache cache = metadataCache;
+        if (cache == null) return fetchNodeInfo(nodes);
+        List<NodeInfo> infos = new ArrayList<>(nodes.size());
+        List<Node> missing = new ArrayList<>();
+        for (Node node : nodes) {
+            NodeInfo info = cache.get(MetadataCache.INFO, node);
+            infos.add(info);
+            if (info == null) missing.add(node);
+        }
+        if (missing.isEmpty()) return CompletableFuture.completedFuture(infos);
+        long generation = cache.generation();
+        return fetchNodeInfo(missing).thenApply(fetched -> {
+            int next = 0;
+            for (int i = 0; i < infos.size(); i++) {
+                if (infos.get(i) != null) continue;
+                NodeInfo info = fetched.get(next++);
+                infos.set(i, info);
+                cache.put(generation, MetadataCache.INFO, nodes.get(i), info);
             }
+            return infos;
+        });
+    }
+
+    private CompletableFuture<List<NodeInfo>> fetchNodeInfo(List<Node> nodes) {
+        List<CompletableFuture<List<NodeInfo>>> batches = new ArrayList<>();
+        for (int from = 0; from < nodes.size(); from += MAX_INFO_BATCH) {
+            List<Node> batch = nodes.subList(from, Integer.min(nodes.size(), from + MAX_INFO_BATCH));
+            batches.add(optionalRequest(REQUEST_CMD_GET_NODE_INFO_BATCH, frame -> {
+                for (Node node : batch) frame.putNode(node);
+            }, response -> {
+                checkStatus(response);
+                List<NodeInfo> infos = new ArrayList<>(batch.size());
+                for (int pos = 0; pos < response.size; pos += Short.BYTES + NODE_INFO_SIZE) {
+                    short status = bufRecvInt16(response.body, pos);
+                    infos.add(status == REQUEST_OK ? bufRecvNodeInfo(response.body, pos + Short.BYTES) : null);
+                }
+                return infos;
+            }, () -> getNodeInfoPipelined(batch)));
         }
+        return concat(batches);
     }
 
-    public NodeInfo getNodeInfo(Node node) throws IOException, RequestException {
-        ServerResponse response = singleNodeRequest(REQUEST_CMD_GET_NODE_INFO, node);
-        if (response.status != REQUEST_OK) {
-            throw new RequestException(response.status);
+    public List<NodeInfo> getNodeInfo(List<Node> nodes) throws IOException, RequestException {
+        return await(getNodeInfoAsync(nodes));
+    }
+
+    private CompletableFuture<List<NodeInfo>> getNodeInfoPipelined(List<Node> nodes) {
+        List<CompletableFuture<List<NodeInfo>>> infos = new ArrayList<>(nodes.size());
+        for (Node node : nodes) {
+            infos.add(getNodeInfoAsync(node).handle((info, error) -> {
+                if (error == null) return Collections.singletonList(info);
+                if (error.getCause() instanceof RequestException) return Collections.singletonList(null);
+                throw error instanceof CompletionException ? (CompletionException) error : new CompletionException(error);
+            }));
         }
-        int pos = 0;
-        byte type = response.body[pos++];
-        long size = bufRecvInt64(response.body, pos);
-        pos += Long.BYTES;
-        byte rights = response.body[pos];
-        return new NodeInfo(type, size, rights);
+        return concat(infos);
     }
 
-    public void setNodeRights(Node node, byte rights) throws IOException, RequestException {
-        synchronized (apiLock) {
-            sendInt32(connection, ++lastId);
-            sendInt16(connection, REQUEST_CMD_SET_NODE_RIGHTS);
-            sendInt64(connection, NODE_ID_SIZE + 1);
-            node.sendNode(connection);
-            sendByte(connection, rights);
-            connection.flush();
-            ServerResponse response = waitResponse(lastId);
-            if (response.status != REQUEST_OK) {
-                throw new RequestException(response.status);
+    private static <T> CompletableFuture<List<T>> concat(List<CompletableFuture<List<T>>> parts) {
+        return CompletableFuture.allOf(parts.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+            List<T> result = new ArrayList<>();
+            for (CompletableFuture<List<T>> part : parts) result.addAll(part.join());
+            return result;
+        });
+    }
+
+    public CompletableFuture<List<DirectoryEntryInfo>> listDirectoryInfoAsync(Node node) {
+        MetadataCache cache = metadataCache;
+        if (cache == null) return fetchDirectoryInfo(node);
+        List<DirectoryEntryInfo> cached = cache.getListingInfo(node);
+        if (cached != null) return CompletableFuture.completedFuture(cached);
+        long generation = cache.generation();
+        return fetchDirectoryInfo(node).thenApply(entries -> {
+            cache.putListingInfo(generation, node, entries);
+            return entries;
+        });
+    }
+
+    private CompletableFuture<List<DirectoryEntryInfo>> fetchDirectoryInfo(Node node) {
+        return optionalRequest(REQUEST_CMD_LIST_DIRECTORY_INFO, frame -> frame.putNode(node), response -> {
+            checkStatus(response);
+            List<DirectoryEntryInfo> entries = new ArrayList<>();
+            int pos = 0;
+            while (pos < response.size) {
+                Node child = Node.bufRecvNode(response.body, pos);
+                pos += NODE_ID_SIZE;
+                NodeInfo info = bufRecvNodeInfo(response.body, pos);
+                pos += NODE_INFO_SIZE;
+                int nameSize = 0xFF & response.body[pos];
+                pos++;
+                String name = bufRecvString(response.body, pos, nameSize);
+                pos += nameSize;
+                entries.add(new DirectoryEntryInfo(child, name, info));
             }
-        }
+            return Collections.unmodifiableList(entries);
+        }, () -> listDirectoryAsync(node).thenCompose(entries -> {
+            List<Node> nodes = new ArrayList<>(entries.size());
+            for (DirectoryEntry entry : entries) nodes.add(entry.node);
+            return getNodeInfoAsync(nodes).thenApply(infos -> {
+                List<DirectoryEntryInfo> result = new ArrayList<>(entries.size());
+                for (int i = 0; i < entries.size(); i++) {
+                    DirectoryEntry entry = entries.get(i);
+                    if (infos.get(i) != null) result.add(new DirectoryEntryInfo(entry.node, entry.name, infos.get(i)));
+                }
+                return Collections.unmodifiableList(result);
+            });
+        }));
+    }
+
+    public void listDirectoryInfo(Node node, DirectoryEntryInfoCallback callback) throws IOException, RequestException {
+        for (DirectoryEntryInfo entry : await(listDirectoryInfoAsync(node))) callback.call(entry.node, entry.name, entry.info);
+    }
+
+    public CompletableFuture<Void> setNodeRightsAsync(Node node, byte rights) {
+        return invalidating(request(REQUEST_CMD_SET_NODE_RIGHTS, frame -> frame.putNode(node).putByte(rights), CloudClient::checkVoid),
+                cache -> cache.infoChanged(node));
+    }
+
+    public void setNodeRights(Node node, byte rights) throws IOException, RequestException {
+        await(setNodeRightsAsync(node, rights));
+    }
+
+    public CompletableFuture<String> getNodeGroupAsync(Node node) {
+        return singleNodeRequest(REQUEST_CMD_GET_NODE_GROUP, node, CloudClient::checkString);
     }
 
     public String getNodeGroup(Node node) throws IOException, RequestException {
-        ServerResponse response = singleNodeRequest(REQUEST_CMD_GET_NODE_GROUP, node);
-        if (response.status != REQUEST_OK) {
-            throw new RequestException(response.status);
-        }
-        return bufRecvString(response.body, 0, response.size);
+        return await(getNodeGroupAsync(node));
+    }
+
+    public CompletableFuture<Void> setNodeGroupAsync(Node node, String group) {
+        return request(REQUEST_CMD_SET_NODE_GROUP, frame -> frame.putNode(node).putString(group), CloudClient::checkVoid);
     }
 
     public void setNodeGroup(Node node, String group) throws IOException, RequestException {
-        synchronized (apiLock) {
-            sendInt32(connection, ++lastId);
-            sendInt16(connection, REQUEST_CMD_SET_NODE_GROUP);
-            sendInt64(connection, NODE_ID_SIZE + stringSize(group));
-            node.sendNode(connection);
-            sendString(connection, group);
-            connection.flush();
-            ServerResponse response = waitResponse(lastId);
-            if (response.status != REQUEST_OK) {
-                throw new RequestException(response.status);
-            }
-        }
+        await(setNodeGroupAsync(node, group));
+    }
+
+    public CompletableFuture<Void> groupInviteAsync(String user) {
+        return singleStringRequest(REQUEST_CMD_GROUP_INVITE, user, CloudClient::checkVoid);
     }
 
     public void groupInvite(String user) throws IOException, RequestException {
-        ServerResponse response = singleStringRequest(REQUEST_CMD_GROUP_INVITE, user);
-        if (response.status != REQUEST_OK) {
-            throw new RequestException(response.status);
-        }
+        await(groupInviteAsync(user));
+    }
+
+    public CompletableFuture<Void> removeNodeAsync(Node node) {
+        return invalidating(singleNodeRequest(REQUEST_CMD_REMOVE_NODE, node, CloudClient::checkVoid), cache -> cache.nodeRemoved(node));
     }
 
     public void removeNode(Node node) throws IOException, RequestException {
-        ServerResponse response = singleNodeRequest(REQUEST_CMD_REMOVE_NODE, node);
-        if (response.status != REQUEST_OK) {
-            throw new RequestException(response.status);
-        }
+        await(removeNodeAsync(node));
+    }
+
+    public CompletableFuture<Void> groupKickAsync(String user) {
+        return singleStringRequest(REQUEST_CMD_GROUP_KICK, user, CloudClient::checkVoid);
     }
 
     public void groupKick(String user) throws IOException, RequestException {
-        ServerResponse response = singleStringRequest(REQUEST_CMD_GROUP_KICK, user);
-        if (response.status != REQUEST_OK) {
-            throw new RequestException(response.status);
-        }
+        await(groupKickAsync(user));
+    }
+
+    public CompletableFuture<List<String>> groupListAsync() {
+        return request(REQUEST_CMD_GROUP_LIST, frame -> {
+        }, response -> {
+            checkStatus(response);
+            List<String> users = new ArrayList<>();
+            int pos = 0;
+            while (pos < response.size) {
+                int nameSize = 0xFF & response.body[pos];
+                pos++;
+                users.add(bufRecvString(response.body, pos, nameSize));
+                pos += nameSize;
+            }
+            return users;
+        });
     }
 
     public void groupList(GroupMemberCallback callback) throws IOException, RequestException {
-        ServerResponse response;
-        synchronized (apiLock) {
-            sendInt32(connection, ++lastId);
-            sendInt16(connection, REQUEST_CMD_GROUP_LIST);
-            sendInt64(connection, 0);
-            connection.flush();
-            response = waitResponse(lastId);
-        }
-        int pos = 0;
-        while (pos < response.size) {
-            int nameSize = 0xFF & response.body[pos];
-            pos++;
-            String name = bufRecvString(response.body, pos, nameSize);
-            pos += nameSize;
-            callback.call(name);
-        }
+        for (String user : await(groupListAsync())) callback.call(user);
+    }
+
+    public CompletableFuture<Node> copyNodeAsync(Node node, String name) {
+        return invalidating(request(REQUEST_CMD_COPY_NODE, frame -> frame.putNode(node).putString(name), CloudClient::checkNode),
+                cache -> cache.entryChanged(node));
     }
 
     public Node copyNode(Node node, String name) throws IOException, RequestException {
+        return await(copyNodeAsync(node, name));
+    }
+
+    public CompletableFuture<Void> moveNodeAsync(Node node, Node destination) {
+        return invalidating(request(REQUEST_CMD_MOVE_NODE, frame -> frame.putNode(node).putNode(destination), CloudClient::checkVoid),
+                cache -> cache.nodeMoved(node, destination));
+    }
+
+    public void moveNode(Node node, Node destination) throws IOException, RequestException {
+        await(moveNodeAsync(node, destination));
+    }
+
+    public CompletableFuture<Void> renameNodeAsync(Node node, String name) {
+        return invalidating(request(REQUEST_CMD_RENAME_NODE, frame -> frame.putNode(node).putString(name), CloudClient::checkVoid),
+                cache -> cache.entryChanged(node));
+    }
+
+    public void renameNode(Node node, String name) throws IOException, RequestException {
+        await(renameNodeAsync(node, name));
+    }
+
+    private void switchRequest(short cmd, byte fd, long size) throws IOException, RequestException {
+        ServerResponse response = await(request(cmd, frame -> frame.putByte(fd).putInt64(size)));
+        response.release();
+        if (response.status != REQUEST_SWITCH_OK) {
+            throw new RequestException(response.status);
+        }
+    }
+
+    public void longReadFD(byte fd, long size, byte[] buffer, int offset, int bufferSize, ReadDataCallback callback) throws IOException, RequestException {
         synchronized (apiLock) {
-            sendInt32(connection, ++lastId);
-            sendInt16(connection, REQUEST_CMD_COPY_NODE);
-            sendInt64(connection, NODE_ID_SIZE + stringSize(name));
-            node.sendNode(connection);
-            sendString(connection, name);
-            connection.flush();
-            ServerResponse response = waitResponse(lastId);
-            if (response.status != REQUEST_OK) {
-                throw new RequestException(response.status);
+            synchronized (ldtmLock) {
+                acquireSendTurn();
+                try {
+                    switchRequest(REQUEST_CMD_FD_READ_LONG, fd, size);
+                    long done = 0;
+                    while (done < size) {
+                        int read = connection.recv(buffer, offset, (int) Long.min(bufferSize, size - done));
+                        callback.call(read);
+                        done += read;
+                    }
+                } finally {
+                    releaseSendTurn();
+                }
             }
-            return Node.bufRecvNode(response.body, 0);
         }
     }
 
-    public void moveNode(Node node, Node destination) throws IOException, RequestException {
+    public void longReadFD(byte fd, long size, ByteBuffer buffer, ReadDataCallback callback) throws IOException, RequestException {
         synchronized (apiLock) {
-            sendInt32(connection, ++lastId);
-            sendInt16(connection, REQUEST_CMD_MOVE_NODE);
-            sendInt64(connection, NODE_ID_SIZE * 2);
-            node.sendNode(connection);
-            destination.sendNode(connection);
-            connection.flush();
-            ServerResponse response = waitResponse(lastId);
-            if (response.status != REQUEST_OK) {
-                throw new RequestException(response.status);
+            synchronized (ldtmLock) {
+                acquireSendTurn();
+                try {
+                    switchRequest(REQUEST_CMD_FD_READ_LONG, fd, size);
+                    int limit = buffer.limit();
+                    long done = 0;
+                    while (done < size) {
+                        if (!buffer.hasRemaining()) throw new BufferOverflowException();
+                        buffer.limit((int) Long.min(limit, buffer.position() + size - done));
+                        int read = connection.recv(buffer);
+                        buffer.limit(limit);
+                        callback.call(read);
+                        done += read;
+                    }
+                } finally {
+                    releaseSendTurn();
+                }
             }
         }
     }
 
-    public void renameNode(Node node, String name) throws IOException, RequestException {
+    public void longWriteFD(byte fd, long size, byte[] buffer, int offset, WriteDataCallback callback) throws IOException, RequestException {
         synchronized (apiLock) {
-            sendInt32(connection, ++lastId);
-            sendInt16(connection, REQUEST_CMD_RENAME_NODE);
-            sendInt64(connection, NODE_ID_SIZE + stringSize(name));
-            node.sendNode(connection);
-            sendString(connection, name);
-            connection.flush();
-            ServerResponse response = waitResponse(lastId);
-            if (response.status != REQUEST_OK) {
-                throw new RequestException(response.status);
+            synchronized (ldtmLock) {
+                acquireSendTurn();
+                try {
+                    switchRequest(REQUEST_CMD_FD_WRITE_LONG, fd, size);
+                    long done = 0;
+                    while (done < size) {
+                        int sent = callback.call();
+                        sendExact(connection, buffer, offset, sent);
+                        done += sent;
+                    }
+                    connection.flush();
+                } finally {
+                    releaseSendTurn();
+                    invalidateWritten(fd);
+                }
             }
         }
     }
 
-    public void longReadFD(byte fd, long size, byte[] buffer, int offset, int bufferSize, ReadDataCallback callback) throws IOException, RequestException {
+    public void longReadFD(byte fd, long size, FileChannel file, long position, ByteBuffer buffer, TransferCallback callback) throws IOException, RequestException {
         synchronized (apiLock) {
             synchronized (ldtmLock) {
-                sendInt32(connection, ++lastId);
-                sendInt16(connection, REQUEST_CMD_FD_READ_LONG);
-                sendInt64(connection, 1 + Long.BYTES);
-                sendByte(connection, fd);
-                sendInt64(connection, size);
-                connection.flush();
-                ServerResponse response = waitResponse(lastId);
-                if (response.status != REQUEST_SWITCH_OK) {
-                    throw new RequestException(response.status);
-                }
-                long done = 0;
-                while (done < size) {
-                    int read = connection.recv(buffer, offset, (int) Long.min(bufferSize, size - done));
-                    callback.call(read);
-                    done += read;
+                acquireSendTurn();
+                try {
+                    switchRequest(REQUEST_CMD_FD_READ_LONG, fd, size);
+                    long done = 0;
+                    while (done < size) {
+                        long read = connection.recv(file, position + done, Long.min(buffer.capacity(), size - done), buffer);
+                        callback.call(read);
+                        done += read;
+                    }
+                } finally {
+                    releaseSendTurn();
                 }
             }
         }
     }
 
-    public void longWriteFD(byte fd, long size, byte[] buffer, int offset, WriteDataCallback callback) throws IOException, RequestException {
+    public void longWriteFD(byte fd, long size, FileChannel file, long position, ByteBuffer buffer, TransferCallback callback) throws IOException, RequestException {
         synchronized (apiLock) {
             synchronized (ldtmLock) {
-                sendInt32(connection, ++lastId);
-                sendInt16(connection, REQUEST_CMD_FD_WRITE_LONG);
-                sendInt64(connection, 1 + Long.BYTES);
-                sendByte(connection, fd);
-                sendInt64(connection, size);
-                connection.flush();
-                ServerResponse response = waitResponse(lastId);
-                if (response.status != REQUEST_SWITCH_OK) {
-                    throw new RequestException(response.status);
-                }
-                long done = 0;
-                while (done < size) {
-                    int sent = callback.call();
-                    sendExact(connection, buffer, offset, sent);
-                    done += sent;
+                acquireSendTurn();
+                try {
+                    switchRequest(REQUEST_CMD_FD_WRITE_LONG, fd, size);
+                    long done = 0;
+                    while (done < size) {
+                        long sent = connection.send(file, position + done, Long.min(buffer.capacity(), size - done), buffer);
+                        callback.call(sent);
+                        done += sent;
+                    }
+                    connection.flush();
+                } finally {
+                    releaseSendTurn();
+                    invalidateWritten(fd);
                 }
             }
         }
     }
 
+    public CompletableFuture<Node> getTokenAsync() {
+        return request(REQUEST_CMD_GET_TOKEN, frame -> {
+        }, CloudClient::checkNode);
+    }
+
     public Node getToken() throws IOException, RequestException {
-        synchronized (apiLock) {
-            sendInt32(connection, ++lastId);
-            sendInt16(connection, REQUEST_CMD_GET_TOKEN);
-            sendInt64(connection, 0);
-            connection.flush();
-            ServerResponse response = waitResponse(lastId);
-            if (response.status != REQUEST_OK) throw new RequestException(response.status);
-            return Node.bufRecvNode(response.body, 0);
+        return await(getTokenAsync());
+    }
+
+    private static boolean isIdempotent(short cmd) {
+        switch (cmd) {
+            case REQUEST_CMD_GET_HOME:
+            case REQUEST_CMD_LIST_DIRECTORY:
+            case REQUEST_CMD_GET_PARENT:
+            case REQUEST_CMD_GET_NODE_OWNER:
+            case REQUEST_CMD_GET_NODE_INFO:
+            case REQUEST_CMD_GET_NODE_GROUP:
+            case REQUEST_CMD_GROUP_LIST:
+            case REQUEST_CMD_GET_TOKEN:
+            case REQUEST_CMD_GET_NODE_INFO_BATCH:
+            case REQUEST_CMD_LIST_DIRECTORY_INFO:
+                return true;
+            default:
+                return false;
         }
     }
 
+    private interface RequestBody {
+        void encode(FrameBuffer frame);
+    }
+
+    private interface ResponseDecoder<T> {
+        T decode(ServerResponse response) throws RequestException;
+    }
+
     public interface PasswordCallback {
         String promptPassword();
     }
@@ -483,6 +1277,20 @@ public final class CloudClient {
         void call(Node node, String name) throws IOException, RequestException;
     }
 
+    /**
+     * Receives directory entries while the listing is still arriving.
+     * The view is only valid during the call, and the callback must not issue requests on the same client
+     * because responses to them are queued behind the rest of the listing.
+     * Returning false stops the iteration.
+     */
+    public interface DirectoryEntryViewCallback {
+        boolean call(DirectoryEntryView entry) throws IOException, RequestException;
+    }
+
+    public interface DirectoryEntryInfoCallback {
+        void call(Node node, String name, NodeInfo info) throws IOException, RequestException;
+    }
+
     public interface GroupMemberCallback {
         void call(String user) throws IOException, RequestException;
     }
@@ -495,12 +1303,35 @@ public final class CloudClient {
         int call() throws IOException;
     }
 
+    public interface TransferCallback {
+        void call(long size) throws IOException;
+    }
+
     public static final class ProtocolException extends Exception {
         public ProtocolException(String message) {
             super(message);
         }
     }
 
+    public static final class SessionResetException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public SessionResetException(Throwable cause) {
+            super("session was reset, the request may or may not have been applied", cause);
+        }
+    }
+
+    /**
+     * Thrown by file transfers when the local file fails rather than the connection.
+     */
+    public static final class LocalFileException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        public LocalFileException(IOException cause) {
+            super(cause.getMessage(), cause);
+        }
+    }
+
     public static final class InitException extends Exception {
         public final short status;
 
@@ -519,6 +1350,99 @@ public final class CloudClient {
         }
     }
 
+    public static final class DirectoryEntry {
+        public final Node node;
+        public final String name;
+
+        public DirectoryEntry(Node node, String name) {
+            this.node = node;
+            this.name = name;
+        }
+
+        @Override
+        public String toString() {
+            return "DirectoryEntry{" +
+                    "node=" + node +
+                    ", name='" + name + '\'' +
+                    '}';
+        }
+    }
+
+    public static final class DirectoryEntryInfo {
+        public final Node node;
+        public final String name;
+        public final NodeInfo info;
+
+        public DirectoryEntryInfo(Node node, String name, NodeInfo info) {
+            this.node = node;
+            this.name = name;
+            this.info = info;
+        }
+
+        @Override
+        public String toString() {
+            return "DirectoryEntryInfo{" +
+                    "node=" + node +
+                    ", name='" + name + '\'' +
+                    ", info=" + info +
+                    '}';
+        }
+    }
+
+    public static final class DirectoryEntryView {
+        private static final ThreadLocal<byte[]> NAME_SCRATCH = ThreadLocal.withInitial(() -> new byte[0xFF]);
+
+        private byte[] data;
+        private int offset;
+        private DirectoryEntry entry;
+
+        private void set(byte[] data, int offset) {
+            this.data = data;
+            this.offset = offset;
+            this.entry = null;
+        }
+
+        private void set(DirectoryEntry entry) {
+            this.data = null;
+            this.entry = entry;
+        }
+
+        public Node node() {
+            if (entry != null) return entry.node;
+            return Node.bufRecvNode(data, offset);
+        }
+
+        public int nameSize() {
+            if (entry != null) return stringSize(entry.name);
+            return 0xFF & data[offset + NODE_ID_SIZE];
+        }
+
+        public String name() {
+            if (entry != null) return entry.name;
+            return bufRecvString(data, offset + NODE_ID_SIZE + 1, nameSize());
+        }
+
+        public boolean nameEquals(String name) {
+            if (entry != null) return entry.name.equals(name);
+            int size = nameSize();
+            if (stringSize(name) != size) return false;
+            byte[] encoded = NAME_SCRATCH.get();
+            bufSendString(encoded, 0, name);
+            for (int i = 0; i < size; i++) if (encoded[i] != data[offset + NODE_ID_SIZE + 1 + i]) return false;
+            return true;
+        }
+
+        public DirectoryEntry materialize() {
+            if (entry != null) return entry;
+            return new DirectoryEntry(node(), name());
+        }
+
+        @Override
+        public String toString() {
+            return materialize().toString();
+        }
+    }
+
     public static class NodeInfo {
         public final byte type;
         public final long size;
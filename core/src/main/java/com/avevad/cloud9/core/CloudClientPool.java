@@ -0,0 +1,117 @@
+package com.avevad.cloud9.core;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.List;
+
+public final class CloudClientPool {
+    public static final long DEFAULT_CHECK_INTERVAL = 15 * 1000; // 15 seconds
+
+    private final CloudClient origin;
+    private final int maxIdle;
+    private final long idleTimeout;
+    private final long checkInterval;
+    private final Deque<IdleClient> idle = new ArrayDeque<>();
+    private boolean closed = false;
+
+    public CloudClientPool(CloudClient origin, int maxIdle, long idleTimeout, long checkInterval) {
+        this.origin = origin;
+        this.maxIdle = maxIdle;
+        this.idleTimeout = idleTimeout;
+        this.checkInterval = checkInterval;
+    }
+
+    public CloudClientPool(CloudClient origin, int maxIdle, long idleTimeout) {
+        this(origin, maxIdle, idleTimeout, DEFAULT_CHECK_INTERVAL);
+    }
+
+    public CloudClient acquire() throws IOException, CloudClient.InitException, CloudClient.ProtocolException, CloudClient.RequestException {
+        while (true) {
+            IdleClient entry;
+            List<CloudClient> expired;
+            synchronized (idle) {
+                if (closed) throw new IllegalStateException("pool is closed");
+                expired = evictExpired();
+                entry = idle.pollLast();
+            }
+            for (CloudClient client : expired) client.disconnect();
+            if (entry == null) return new CloudClient(origin);
+            if (isHealthy(entry)) return entry.client;
+            entry.client.close();
+        }
+    }
+
+    public void release(CloudClient client) {
+        if (!client.isConnected()) {
+            client.close();
+            return;
+        }
+        List<CloudClient> expired;
+        synchronized (idle) {
+            expired = evictExpired();
+            if (!closed && idle.size() < maxIdle) {
+                idle.addLast(new IdleClient(client, System.currentTimeMillis()));
+                client = null;
+            }
+        }
+        for (CloudClient expiredClient : expired) expiredClient.disconnect();
+        if (client != null) client.disconnect();
+    }
+
+    public void discard(CloudClient client) {
+        client.close();
+    }
+
+    public int idleCount() {
+        synchronized (idle) {
+            return idle.size();
+        }
+    }
+
+    public void close() {
+        List<CloudClient> clients = new ArrayList<>();
+        synchronized (idle) {
+            closed = true;
+            for (IdleClient entry : idle) clients.add(entry.client);
+            idle.clear();
+        }
+        for (CloudClient client : clients) client.disconnect();
+    }
+
+    private List<CloudClient> evictExpired() {
+        List<CloudClient> expired = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        Iterator<IdleClient> iterator = idle.iterator();
+        while (iterator.hasNext()) {
+            IdleClient entry = iterator.next();
+            if (now - entry.since < idleTimeout) continue;
+            iterator.remove();
+            expired.add(entry.client);
+        }
+        return expired;
+    }
+
+    private boolean isHealthy(IdleClient entry) {
+        if (!entry.client.isConnected()) return false;
+        if (System.currentTimeMillis() - entry.since < checkInterval) return true;
+        try {
+            entry.client.ping();
+            return true;
+        } catch (IOException | CloudClient.RequestException e) {
+            return false;
+        }
+    }
+
+    private static final class IdleClient {
+        public final CloudClient client;
+        public final long since;
+
+        public IdleClient(CloudClient client, long since) {
+            this.client = client;
+            this.since = since;
+        }
+    }
+}
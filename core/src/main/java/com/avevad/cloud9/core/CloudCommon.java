@@ -4,9 +4,13 @@ import com.avevad.cloud9.core.util.Holder;
 
 import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.util.Arrays;
-import java.util.stream.IntStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
+import static com.avevad.cloud9.core.CloudConnection.Helper.bufRecvInt64;
+import static com.avevad.cloud9.core.CloudConnection.Helper.bufSendInt64;
 import static com.avevad.cloud9.core.CloudConnection.Helper.recvExact;
 import static com.avevad.cloud9.core.CloudConnection.Helper.sendExact;
 
@@ -39,6 +43,17 @@ public final class CloudCommon {
     public static final short INIT_CMD_AUTH = 1;
     public static final short INIT_CMD_REGISTER = 2;
     public static final short INIT_CMD_TOKEN = 3;
+    public static final short INIT_CMD_COMPRESS = 4;
+    public static final short INIT_CMD_CAPABILITIES = 5;
+
+    public static final byte COMPRESSION_DEFLATE = 1;
+
+    public static final long CAPABILITY_FD_SEEK = 1L;
+    public static final long CAPABILITY_NODE_INFO_BATCH = 1L << 1;
+    public static final long CAPABILITY_LIST_DIRECTORY_INFO = 1L << 2;
+    public static final long CAPABILITY_COMPRESS_DEFLATE = 1L << 3;
+    public static final long CLOUD_CAPABILITIES = CAPABILITY_FD_SEEK | CAPABILITY_NODE_INFO_BATCH
+            | CAPABILITY_LIST_DIRECTORY_INFO | CAPABILITY_COMPRESS_DEFLATE;
 
     public static final short INIT_OK = 0;
     public static final short INIT_ERR_BODY_TOO_LARGE = 1;
@@ -74,6 +89,9 @@ public final class CloudCommon {
     public static final short REQUEST_CMD_MOVE_NODE = 22;
     public static final short REQUEST_CMD_RENAME_NODE = 23;
     public static final short REQUEST_CMD_GET_TOKEN = 24;
+    public static final short REQUEST_CMD_FD_SEEK = 25;
+    public static final short REQUEST_CMD_GET_NODE_INFO_BATCH = 26;
+    public static final short REQUEST_CMD_LIST_DIRECTORY_INFO = 27;
 
     public static final short REQUEST_OK = 0;
     public static final short REQUEST_ERR_BODY_TOO_LARGE = 1;
@@ -106,59 +124,89 @@ public final class CloudCommon {
     public static final byte NODE_TYPE_FILE = 0x0;
     public static final byte NODE_TYPE_DIRECTORY = 0x1;
 
-    public static final class Node {
-        private final byte[] id;
+    public static final class Node implements Comparable<Node> {
+        private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+        private static final ThreadLocal<byte[]> SCRATCH = ThreadLocal.withInitial(() -> new byte[NODE_ID_SIZE]);
+
+        public final long high, low;
 
-        private Node(byte[] id) {
-            this.id = id;
+        public Node(long high, long low) {
+            this.high = high;
+            this.low = low;
         }
 
         public static Node bufRecvNode(byte[] buffer, int offset) {
-            return new Node(Arrays.copyOfRange(buffer, offset, offset + NODE_ID_SIZE));
+            return new Node(bufRecvInt64(buffer, offset), bufRecvInt64(buffer, offset + Long.BYTES));
         }
 
         public static Node recvNode(CloudConnection connection) throws IOException {
-            byte[] buffer = new byte[NODE_ID_SIZE];
+            byte[] buffer = SCRATCH.get();
             recvExact(connection, buffer, 0, NODE_ID_SIZE);
             return bufRecvNode(buffer, 0);
         }
 
         public void bufSendNode(byte[] buffer, int offset) {
-            System.arraycopy(id, 0, buffer, offset, NODE_ID_SIZE);
+            bufSendInt64(buffer, offset, high);
+            bufSendInt64(buffer, offset + Long.BYTES, low);
         }
 
         public void sendNode(CloudConnection connection) throws IOException {
-            byte[] buffer = new byte[NODE_ID_SIZE];
+            byte[] buffer = SCRATCH.get();
             bufSendNode(buffer, 0);
             sendExact(connection, buffer, 0, NODE_ID_SIZE);
         }
 
         public static Node fromString(String id) {
             if (id.length() != NODE_ID_SIZE * 2) throw new IllegalArgumentException("invalid node id size");
-            if (!IntStream.range(0, NODE_ID_SIZE).mapToObj(id::charAt).
-                    allMatch(c -> (c >= '0' && c <= '9') || (c >= 'a' && c <= 'f')))
-                throw new IllegalArgumentException("invalid character in id");
-            byte[] bytes = new byte[NODE_ID_SIZE];
-            for (int i = 0; i < NODE_ID_SIZE; i++) {
-                char c1 = id.charAt(i * 2);
-                char c2 = id.charAt(i * 2 + 1);
-                int b1 = (c1 >= '0' && c1 <= '9') ? (c1 - '0') : (c1 - 'a' + 0xA);
-                int b2 = (c2 >= '0' && c2 <= '9') ? (c2 - '0') : (c2 - 'a' + 0xA);
-                bytes[i] = (byte) ((b1 << 4) | b2);
+            return new Node(parseHex(id, 0), parseHex(id, NODE_ID_SIZE));
+        }
+
+        private static long parseHex(String id, int offset) {
+            long n = 0;
+            for (int i = offset; i < offset + Long.BYTES * 2; i++) {
+                char c = id.charAt(i);
+                int digit;
+                if (c >= '0' && c <= '9') digit = c - '0';
+                else if (c >= 'a' && c <= 'f') digit = c - 'a' + 0xA;
+                else throw new IllegalArgumentException("invalid character in id");
+                n = (n << 4) | digit;
             }
-            return new Node(bytes);
+            return n;
+        }
+
+        public static int hash(long high, long low) {
+            long h = (high * 0x9E3779B97F4A7C15L) ^ low;
+            h ^= h >>> 32;
+            return (int) (h ^ (h >>> 16));
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Node)) return false;
+            Node other = (Node) o;
+            return high == other.high && low == other.low;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash(high, low);
+        }
+
+        @Override
+        public int compareTo(Node other) {
+            int result = Long.compareUnsigned(high, other.high);
+            return result != 0 ? result : Long.compareUnsigned(low, other.low);
         }
 
         @Override
         public String toString() {
-            StringBuilder builder = new StringBuilder(NODE_ID_SIZE * 2);
-            for (byte b : id) {
-                int b1 = (b & 0xF0) >> 4;
-                int b2 = (b & 0x0F);
-                builder.append((char) (b1 < 0xA ? ('0' + b1) : ('a' + (b1 - 0xA))));
-                builder.append((char) (b2 < 0xA ? ('0' + b2) : ('a' + (b2 - 0xA))));
+            char[] chars = new char[NODE_ID_SIZE * 2];
+            for (int i = 0; i < Long.BYTES * 2; i++) {
+                chars[i] = HEX_DIGITS[(int) (high >>> (60 - i * 4)) & 0xF];
+                chars[i + Long.BYTES * 2] = HEX_DIGITS[(int) (low >>> (60 - i * 4)) & 0xF];
             }
-            return builder.toString();
+            return new String(chars);
         }
     }
 
@@ -173,12 +221,42 @@ public final class CloudCommon {
     }
 
     public static Node parsePath(CloudClient client, Node start, String path) throws IOException, CloudClient.RequestException {
+        MetadataCache cache = client.getMetadataCache();
+        if (cache == null) return walkPath(client, start, path);
+        List<String> names = new ArrayList<>();
+        for (String name : path.split(String.valueOf(CLOUD_PATH_SEP))) if (!name.isEmpty()) names.add(name);
+        String[] prefixes = new String[names.size() + 1];
+        prefixes[0] = "";
+        for (int i = 0; i < names.size(); i++) prefixes[i + 1] = prefixes[i] + CLOUD_PATH_SEP + names.get(i);
+        long generation = cache.generation();
+        int resolved = names.size();
+        Node cur = null;
+        while (resolved > 0 && (cur = cache.getPath(start, prefixes[resolved])) == null) resolved--;
+        if (cur == null) cur = start;
+        for (int i = resolved; i < names.size(); i++) {
+            Map<String, Node> index = cache.nameIndex(cur);
+            if (index == null) {
+                Map<String, Node> listed = new HashMap<>();
+                client.listDirectory(cur, (child, name) -> listed.put(name, child));
+                index = listed;
+            }
+            Node next = index.get(names.get(i));
+            if (next == null) throw new FileNotFoundException(names.get(i));
+            cache.putPath(generation, start, prefixes[i + 1], next);
+            cur = next;
+        }
+        return cur;
+    }
+
+    private static Node walkPath(CloudClient client, Node start, String path) throws IOException, CloudClient.RequestException {
         Node cur = start;
         for (String dir : path.split(String.valueOf(CLOUD_PATH_SEP))) {
             if (dir.isEmpty()) continue;
             Holder<Node> next = new Holder<>();
-            client.listDirectory(cur, (node, name) -> {
-                if (name.equals(dir)) next.value = node;
+            client.listDirectory(cur, entry -> {
+                if (!entry.nameEquals(dir)) return true;
+                next.value = entry.node();
+                return false;
             });
             if (next.value == null) throw new FileNotFoundException(dir);
             cur = next.value;
@@ -1,8 +1,12 @@
 package com.avevad.cloud9.core;
 
+import com.avevad.cloud9.core.CloudClient.LocalFileException;
+
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 
 public interface CloudConnection {
     int recv(byte[] buffer, int offset, int size) throws IOException;
@@ -17,6 +21,63 @@ public interface CloudConnection {
         return send(buffer, 0, size);
     }
 
+    default int recv(ByteBuffer buffer) throws IOException {
+        if (buffer.hasArray()) {
+            int read = recv(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            buffer.position(buffer.position() + read);
+            return read;
+        }
+        byte[] data = new byte[buffer.remaining()];
+        int read = recv(data, 0, data.length);
+        buffer.put(data, 0, read);
+        return read;
+    }
+
+    default int send(ByteBuffer buffer) throws IOException {
+        if (buffer.hasArray()) {
+            int sent = send(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+            buffer.position(buffer.position() + sent);
+            return sent;
+        }
+        byte[] data = new byte[buffer.remaining()];
+        buffer.get(data);
+        Helper.sendExact(this, data, 0, data.length);
+        return data.length;
+    }
+
+    default long send(ByteBuffer[] buffers) throws IOException {
+        long sent = 0;
+        for (ByteBuffer buffer : buffers) {
+            sent += buffer.remaining();
+            Helper.sendExact(this, buffer);
+        }
+        return sent;
+    }
+
+    default long recv(FileChannel file, long position, long count, ByteBuffer buffer) throws IOException {
+        buffer.clear();
+        buffer.limit((int) Long.min(count, buffer.capacity()));
+        int read = recv(buffer);
+        buffer.flip();
+        Helper.writeFile(file, buffer, position);
+        return read;
+    }
+
+    default long send(FileChannel file, long position, long count, ByteBuffer buffer) throws IOException {
+        buffer.clear();
+        buffer.limit((int) Long.min(count, buffer.capacity()));
+        int read;
+        try {
+            read = file.read(buffer, position);
+        } catch (IOException e) {
+            throw new LocalFileException(e);
+        }
+        if (read == -1) throw new EOFException();
+        buffer.flip();
+        Helper.sendExact(this, buffer);
+        return read;
+    }
+
     void flush() throws IOException;
 
     boolean isOpen();
@@ -39,83 +100,119 @@ public interface CloudConnection {
             while (pos < size) pos += connection.send(buffer, offset + pos, size - pos);
         }
 
+        public static void recvExact(CloudConnection connection, ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) connection.recv(buffer);
+        }
+
+        public static void sendExact(CloudConnection connection, ByteBuffer buffer) throws IOException {
+            while (buffer.hasRemaining()) connection.send(buffer);
+        }
+
+        public static void sendExact(CloudConnection connection, ByteBuffer[] buffers) throws IOException {
+            while (buffers[buffers.length - 1].hasRemaining()) connection.send(buffers);
+        }
+
+        public static void writeFile(FileChannel file, ByteBuffer buffer, long position) throws LocalFileException {
+            try {
+                while (buffer.hasRemaining()) file.write(buffer, position + buffer.position());
+            } catch (IOException e) {
+                throw new LocalFileException(e);
+            }
+        }
+
+        private static final ThreadLocal<byte[]> SCRATCH = ThreadLocal.withInitial(() -> new byte[Long.BYTES]);
+
         public static byte recvByte(CloudConnection connection) throws IOException {
-            byte[] buffer = new byte[1];
+            byte[] buffer = SCRATCH.get();
             recvExact(connection, buffer, 0, 1);
             return buffer[0];
         }
 
         public static void sendByte(CloudConnection connection, byte n) throws IOException {
-            byte[] buffer = new byte[]{n};
+            byte[] buffer = SCRATCH.get();
+            buffer[0] = n;
             sendExact(connection, buffer, 0, 1);
         }
 
         public static short bufRecvInt16(byte[] buffer, int offset) {
-            return ByteBuffer.wrap(buffer, offset, Short.BYTES).getShort();
+            return (short) ((buffer[offset] << 8) | (buffer[offset + 1] & 0xFF));
         }
 
         public static short recvInt16(CloudConnection connection) throws IOException {
-            byte[] buffer = new byte[Short.BYTES];
+            byte[] buffer = SCRATCH.get();
             recvExact(connection, buffer, 0, Short.BYTES);
             return bufRecvInt16(buffer, 0);
         }
 
         public static void bufSendInt16(byte[] buffer, int offset, short n) {
-            ByteBuffer.wrap(buffer, offset, Short.BYTES).putShort(n);
+            buffer[offset] = (byte) (n >> 8);
+            buffer[offset + 1] = (byte) n;
         }
 
         public static void sendInt16(CloudConnection connection, short n) throws IOException {
-            byte[] buffer = new byte[Short.BYTES];
+            byte[] buffer = SCRATCH.get();
             bufSendInt16(buffer, 0, n);
             sendExact(connection, buffer, 0, Short.BYTES);
         }
 
         public static int bufRecvInt32(byte[] buffer, int offset) {
-            return ByteBuffer.wrap(buffer, offset, Integer.BYTES).getInt();
+            return (buffer[offset] << 24) | ((buffer[offset + 1] & 0xFF) << 16) |
+                    ((buffer[offset + 2] & 0xFF) << 8) | (buffer[offset + 3] & 0xFF);
         }
 
         public static int recvInt32(CloudConnection connection) throws IOException {
-            byte[] buffer = new byte[Integer.BYTES];
+            byte[] buffer = SCRATCH.get();
             recvExact(connection, buffer, 0, Integer.BYTES);
             return bufRecvInt32(buffer, 0);
         }
 
         public static void bufSendInt32(byte[] buffer, int offset, int n) {
-            ByteBuffer.wrap(buffer, offset, Integer.BYTES).putInt(n);
+            buffer[offset] = (byte) (n >> 24);
+            buffer[offset + 1] = (byte) (n >> 16);
+            buffer[offset + 2] = (byte) (n >> 8);
+            buffer[offset + 3] = (byte) n;
         }
 
         public static void sendInt32(CloudConnection connection, int n) throws IOException {
-            byte[] buffer = new byte[Integer.BYTES];
+            byte[] buffer = SCRATCH.get();
             bufSendInt32(buffer, 0, n);
             sendExact(connection, buffer, 0, Integer.BYTES);
         }
 
         public static long bufRecvInt64(byte[] buffer, int offset) {
-            return ByteBuffer.wrap(buffer, offset, Long.BYTES).getLong();
+            return ((long) bufRecvInt32(buffer, offset) << 32) | (bufRecvInt32(buffer, offset + Integer.BYTES) & 0xFFFFFFFFL);
         }
 
         public static long recvInt64(CloudConnection connection) throws IOException {
-            byte[] buffer = new byte[Long.BYTES];
+            byte[] buffer = SCRATCH.get();
             recvExact(connection, buffer, 0, Long.BYTES);
             return bufRecvInt64(buffer, 0);
         }
 
         public static void bufSendInt64(byte[] buffer, int offset, long n) {
-            ByteBuffer.wrap(buffer, offset, Long.BYTES).putLong(n);
+            bufSendInt32(buffer, offset, (int) (n >> 32));
+            bufSendInt32(buffer, offset + Integer.BYTES, (int) n);
         }
 
         public static void sendInt64(CloudConnection connection, long n) throws IOException {
-            byte[] buffer = new byte[Long.BYTES];
+            byte[] buffer = SCRATCH.get();
             bufSendInt64(buffer, 0, n);
             sendExact(connection, buffer, 0, Long.BYTES);
         }
 
         public static int stringSize(String s) {
-            try {
-                return s.getBytes(CloudCommon.CLOUD_CHARSET).length;
-            } catch (UnsupportedEncodingException e) {
-                throw new AssertionError("the platform does not support the cloud encoding");
+            int size = 0;
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c < 0x80) size++;
+                else if (c < 0x800) size += 2;
+                else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    size += 4;
+                    i++;
+                } else if (Character.isSurrogate(c)) size++;
+                else size += 3;
             }
+            return size;
         }
 
         public static String bufRecvString(byte[] buffer, int offset, int size) {
@@ -132,13 +229,28 @@ public interface CloudConnection {
             return bufRecvString(buffer, 0, size);
         }
 
-        public static void bufSendString(byte[] buffer, int offset, String s) {
-            try {
-                byte[] bytes = s.getBytes(CloudCommon.CLOUD_CHARSET);
-                System.arraycopy(s.getBytes(), 0, buffer, offset, bytes.length);
-            } catch (UnsupportedEncodingException e) {
-                throw new AssertionError("the platform does not support the cloud encoding");
+        public static int bufSendString(byte[] buffer, int offset, String s) {
+            int pos = offset;
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c < 0x80) buffer[pos++] = (byte) c;
+                else if (c < 0x800) {
+                    buffer[pos++] = (byte) (0xC0 | (c >> 6));
+                    buffer[pos++] = (byte) (0x80 | (c & 0x3F));
+                } else if (Character.isHighSurrogate(c) && i + 1 < s.length() && Character.isLowSurrogate(s.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, s.charAt(++i));
+                    buffer[pos++] = (byte) (0xF0 | (cp >> 18));
+                    buffer[pos++] = (byte) (0x80 | ((cp >> 12) & 0x3F));
+                    buffer[pos++] = (byte) (0x80 | ((cp >> 6) & 0x3F));
+                    buffer[pos++] = (byte) (0x80 | (cp & 0x3F));
+                } else if (Character.isSurrogate(c)) buffer[pos++] = '?';
+                else {
+                    buffer[pos++] = (byte) (0xE0 | (c >> 12));
+                    buffer[pos++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+                    buffer[pos++] = (byte) (0x80 | (c & 0x3F));
+                }
             }
+            return pos - offset;
         }
 
         public static void sendString(CloudConnection connection, String s) throws IOException {
@@ -0,0 +1,119 @@
+package com.avevad.cloud9.core;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import static com.avevad.cloud9.core.CloudConnection.Helper.sendExact;
+
+/**
+ * Compresses both directions of a connection as raw deflate streams, flushed with {@link Deflater#SYNC_FLUSH}
+ * whenever the connection is flushed so that every frame can be decoded as soon as it arrives.
+ * Compression is a property of a negotiated session, so {@link #reconnect()} returns a plain connection.
+ */
+public final class DeflateConnection implements CloudConnection {
+    private static final int BUFFER_SIZE = 64 * 1024; // 64 KiB
+
+    private final CloudConnection connection;
+    private final Deflater deflater;
+    private final Inflater inflater = new Inflater(true);
+    private final byte[] sendBuffer = new byte[BUFFER_SIZE];
+    private final byte[] recvBuffer = new byte[BUFFER_SIZE];
+    private final byte[] sendScratch = new byte[BUFFER_SIZE];
+    private final byte[] recvScratch = new byte[BUFFER_SIZE];
+    private volatile boolean closed = false;
+
+    public DeflateConnection(CloudConnection connection, int level) {
+        this.connection = connection;
+        deflater = new Deflater(level, true);
+    }
+
+    @Override
+    public int recv(byte[] data, int offset, int size) throws IOException {
+        if (size == 0) return 0;
+        synchronized (inflater) {
+            try {
+                while (true) {
+                    ensureOpen();
+                    int read = inflater.inflate(data, offset, size);
+                    if (read > 0) return read;
+                    if (inflater.finished() || inflater.needsDictionary()) throw new IOException("unexpected end of compressed stream");
+                    if (inflater.needsInput()) inflater.setInput(recvBuffer, 0, connection.recv(recvBuffer, 0, recvBuffer.length));
+                }
+            } catch (DataFormatException e) {
+                throw new IOException(e);
+            }
+        }
+    }
+
+    @Override
+    public int send(byte[] data, int offset, int size) throws IOException {
+        synchronized (deflater) {
+            ensureOpen();
+            deflater.setInput(data, offset, size);
+            while (!deflater.needsInput()) {
+                int compressed = deflater.deflate(sendBuffer, 0, sendBuffer.length, Deflater.NO_FLUSH);
+                if (compressed > 0) sendExact(connection, sendBuffer, 0, compressed);
+            }
+            return size;
+        }
+    }
+
+    @Override
+    public int recv(ByteBuffer buffer) throws IOException {
+        if (buffer.hasArray()) return CloudConnection.super.recv(buffer);
+        int read = recv(recvScratch, 0, Integer.min(buffer.remaining(), recvScratch.length));
+        buffer.put(recvScratch, 0, read);
+        return read;
+    }
+
+    @Override
+    public int send(ByteBuffer buffer) throws IOException {
+        if (buffer.hasArray()) return CloudConnection.super.send(buffer);
+        int sent = Integer.min(buffer.remaining(), sendScratch.length);
+        buffer.get(sendScratch, 0, sent);
+        return send(sendScratch, 0, sent);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        synchronized (deflater) {
+            ensureOpen();
+            int compressed;
+            do {
+                compressed = deflater.deflate(sendBuffer, 0, sendBuffer.length, Deflater.SYNC_FLUSH);
+                if (compressed > 0) sendExact(connection, sendBuffer, 0, compressed);
+            } while (compressed == sendBuffer.length);
+        }
+        connection.flush();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return connection.isOpen();
+    }
+
+    @Override
+    public CloudConnection reconnect() throws IOException {
+        return connection.reconnect();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        // closing the connection first unblocks any pending recv or send so that the streams can be ended
+        connection.close();
+        synchronized (deflater) {
+            deflater.end();
+        }
+        synchronized (inflater) {
+            inflater.end();
+        }
+    }
+
+    private void ensureOpen() throws IOException {
+        if (closed) throw new IOException("connection closed");
+    }
+}
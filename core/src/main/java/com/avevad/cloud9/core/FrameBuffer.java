@@ -0,0 +1,122 @@
+package com.avevad.cloud9.core;
+
+import com.avevad.cloud9.core.CloudCommon.Node;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static com.avevad.cloud9.core.CloudCommon.NODE_ID_SIZE;
+import static com.avevad.cloud9.core.CloudConnection.Helper.*;
+
+final class FrameBuffer {
+    private static final int DEFAULT_CAPACITY = 4096;
+    private static final int MAX_RETAINED_CAPACITY = 1024 * 1024;
+    private static final int ATTACH_THRESHOLD = 16 * 1024;
+
+    private byte[] data = new byte[DEFAULT_CAPACITY];
+    private int size = 0;
+    private byte[] tail = null;
+    private int tailOffset, tailSize = 0;
+    int id;
+
+    void reset() {
+        size = 0;
+        tail = null;
+        tailSize = 0;
+        if (data.length > MAX_RETAINED_CAPACITY) data = new byte[DEFAULT_CAPACITY];
+    }
+
+    int size() {
+        return size + tailSize;
+    }
+
+    FrameBuffer putByte(byte n) {
+        ensure(1);
+        data[size++] = n;
+        return this;
+    }
+
+    FrameBuffer putInt16(short n) {
+        ensure(Short.BYTES);
+        bufSendInt16(data, size, n);
+        size += Short.BYTES;
+        return this;
+    }
+
+    FrameBuffer putInt32(int n) {
+        ensure(Integer.BYTES);
+        bufSendInt32(data, size, n);
+        size += Integer.BYTES;
+        return this;
+    }
+
+    FrameBuffer putInt64(long n) {
+        ensure(Long.BYTES);
+        bufSendInt64(data, size, n);
+        size += Long.BYTES;
+        return this;
+    }
+
+    void setInt32(int offset, int n) {
+        bufSendInt32(data, offset, n);
+    }
+
+    void setInt64(int offset, long n) {
+        bufSendInt64(data, offset, n);
+    }
+
+    FrameBuffer putNode(Node node) {
+        ensure(NODE_ID_SIZE);
+        node.bufSendNode(data, size);
+        size += NODE_ID_SIZE;
+        return this;
+    }
+
+    FrameBuffer putString(String s) {
+        ensure(s.length() * 3);
+        size += bufSendString(data, size, s);
+        return this;
+    }
+
+    FrameBuffer putShortString(String s) {
+        ensure(1 + s.length() * 3);
+        int length = bufSendString(data, size + 1, s);
+        data[size] = (byte) length;
+        size += 1 + length;
+        return this;
+    }
+
+    FrameBuffer put(byte[] buffer, int offset, int length) {
+        ensure(length);
+        System.arraycopy(buffer, offset, data, size, length);
+        size += length;
+        return this;
+    }
+
+    FrameBuffer putTail(byte[] buffer, int offset, int length) {
+        if (length < ATTACH_THRESHOLD) return put(buffer, offset, length);
+        tail = buffer;
+        tailOffset = offset;
+        tailSize = length;
+        return this;
+    }
+
+    void detachTail() {
+        if (tail == null) return;
+        byte[] buffer = tail;
+        int length = tailSize;
+        tail = null;
+        tailSize = 0;
+        put(buffer, tailOffset, length);
+    }
+
+    void send(CloudConnection connection) throws IOException {
+        if (tail == null) sendExact(connection, data, 0, size);
+        else sendExact(connection, new ByteBuffer[]{ByteBuffer.wrap(data, 0, size), ByteBuffer.wrap(tail, tailOffset, tailSize)});
+    }
+
+    private void ensure(int length) {
+        if (size + length > data.length) data = Arrays.copyOf(data, Integer.max(data.length * 2, size + length));
+    }
+}
@@ -0,0 +1,256 @@
+package com.avevad.cloud9.core;
+
+import com.avevad.cloud9.core.CloudClient.DirectoryEntry;
+import com.avevad.cloud9.core.CloudClient.DirectoryEntryInfo;
+import com.avevad.cloud9.core.CloudClient.NodeInfo;
+import com.avevad.cloud9.core.CloudCommon.Node;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bounded LRU cache of node metadata shared by a client and its clones.
+ * Entries expire after a fixed time to live, local mutations invalidate the affected entries immediately.
+ * Values fetched while an invalidation happened are not stored, so a racing response never resurrects stale data.
+ */
+public final class MetadataCache {
+    static final byte INFO = 0;
+    static final byte LISTING = 1;
+    static final byte PARENT = 2;
+    static final byte HOME = 3;
+
+    private final long ttl;
+    private final LinkedHashMap<Key, Value> entries;
+    private final LinkedHashMap<PathKey, Value> paths;
+    private long generation = 0;
+
+    public MetadataCache(int maxEntries, long ttl) {
+        this.ttl = TimeUnit.MILLISECONDS.toNanos(ttl);
+        entries = new LinkedHashMap<Key, Value>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Key, Value> eldest) {
+                return size() > maxEntries;
+            }
+        };
+        paths = new LinkedHashMap<PathKey, Value>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<PathKey, Value> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    public synchronized void invalidate(Node node) {
+        generation++;
+        entries.remove(new Key(INFO, node));
+        entries.remove(new Key(LISTING, node));
+        entries.remove(new Key(PARENT, node));
+        paths.clear();
+    }
+
+    public synchronized void clear() {
+        generation++;
+        entries.clear();
+        paths.clear();
+    }
+
+    public synchronized int size() {
+        return entries.size() + paths.size();
+    }
+
+    synchronized long generation() {
+        return generation;
+    }
+
+    @SuppressWarnings("unchecked")
+    synchronized <T> T get(byte kind, Object key) {
+        Value value = lookup(entries, new Key(kind, key));
+        return value == null ? null : (T) value.value;
+    }
+
+    synchronized void put(long generation, byte kind, Object key, Object value) {
+        if (value == null || generation != this.generation) return;
+        entries.put(new Key(kind, key), new Value(value, System.nanoTime() + ttl));
+    }
+
+    synchronized void putListing(long generation, Node directory, List<DirectoryEntry> listing) {
+        if (generation != this.generation) return;
+        long expires = System.nanoTime() + ttl;
+        entries.put(new Key(LISTING, directory), new Value(listing, expires));
+        for (DirectoryEntry entry : listing) entries.put(new Key(PARENT, entry.node), new Value(directory, expires));
+    }
+
+    synchronized void putListingInfo(long generation, Node directory, List<DirectoryEntryInfo> listing) {
+        if (generation != this.generation) return;
+        List<DirectoryEntry> children = new ArrayList<>(listing.size());
+        for (DirectoryEntryInfo entry : listing) children.add(new DirectoryEntry(entry.node, entry.name));
+        putListing(generation, directory, Collections.unmodifiableList(children));
+        long expires = System.nanoTime() + ttl;
+        for (DirectoryEntryInfo entry : listing) entries.put(new Key(INFO, entry.node), new Value(entry.info, expires));
+    }
+
+    synchronized List<DirectoryEntryInfo> getListingInfo(Node directory) {
+        List<DirectoryEntry> listing = get(LISTING, directory);
+        if (listing == null) return null;
+        List<DirectoryEntryInfo> result = new ArrayList<>(listing.size());
+        for (DirectoryEntry entry : listing) {
+            NodeInfo info = get(INFO, entry.node);
+            if (info == null) return null;
+            result.add(new DirectoryEntryInfo(entry.node, entry.name, info));
+        }
+        return Collections.unmodifiableList(result);
+    }
+
+    synchronized Map<String, Node> nameIndex(Node directory) {
+        Value listing = lookup(entries, new Key(LISTING, directory));
+        if (listing == null) return null;
+        if (listing.index == null) {
+            @SuppressWarnings("unchecked")
+            List<DirectoryEntry> children = (List<DirectoryEntry>) listing.value;
+            Map<String, Node> index = new HashMap<>(children.size() * 4 / 3 + 1);
+            for (DirectoryEntry child : children) index.put(child.name, child.node);
+            listing.index = Collections.unmodifiableMap(index);
+        }
+        return listing.index;
+    }
+
+    synchronized Node getPath(Node start, String path) {
+        Value value = lookup(paths, new PathKey(start, path));
+        return value == null ? null : (Node) value.value;
+    }
+
+    synchronized void putPath(long generation, Node start, String path, Node node) {
+        if (generation != this.generation) return;
+        paths.put(new PathKey(start, path), new Value(node, System.nanoTime() + ttl));
+    }
+
+    synchronized void infoChanged(Node node) {
+        generation++;
+        entries.remove(new Key(INFO, node));
+    }
+
+    synchronized void directoryChanged(Node directory) {
+        generation++;
+        entries.remove(new Key(LISTING, directory));
+    }
+
+    synchronized void entryChanged(Node node) {
+        generation++;
+        paths.clear();
+        Value parent = entries.get(new Key(PARENT, node));
+        if (parent != null) {
+            entries.remove(new Key(LISTING, parent.value));
+            return;
+        }
+        Iterator<Map.Entry<Key, Value>> iterator = entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            Map.Entry<Key, Value> entry = iterator.next();
+            if (entry.getKey().kind != LISTING) continue;
+            @SuppressWarnings("unchecked")
+            List<DirectoryEntry> listing = (List<DirectoryEntry>) entry.getValue().value;
+            for (DirectoryEntry child : listing) {
+                if (child.node.equals(node)) {
+                    iterator.remove();
+                    break;
+                }
+            }
+        }
+    }
+
+    synchronized void nodeMoved(Node node, Node destination) {
+        entryChanged(node);
+        entries.remove(new Key(PARENT, node));
+        entries.remove(new Key(LISTING, destination));
+    }
+
+    synchronized void nodeRemoved(Node node) {
+        entryChanged(node);
+        Deque<Node> stack = new ArrayDeque<>();
+        stack.push(node);
+        while (!stack.isEmpty()) {
+            Node current = stack.pop();
+            entries.remove(new Key(INFO, current));
+            entries.remove(new Key(PARENT, current));
+            Value listing = entries.remove(new Key(LISTING, current));
+            if (listing == null) continue;
+            @SuppressWarnings("unchecked")
+            List<DirectoryEntry> children = (List<DirectoryEntry>) listing.value;
+            for (DirectoryEntry child : children) stack.push(child.node);
+        }
+    }
+
+    private static <K> Value lookup(Map<K, Value> map, K key) {
+        Value value = map.get(key);
+        if (value == null) return null;
+        if (System.nanoTime() - value.expires > 0) {
+            map.remove(key);
+            return null;
+        }
+        return value;
+    }
+
+    private static final class Key {
+        public final byte kind;
+        public final Object key;
+
+        public Key(byte kind, Object key) {
+            this.kind = kind;
+            this.key = key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return kind == other.kind && key.equals(other.key);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * key.hashCode() + kind;
+        }
+    }
+
+    private static final class PathKey {
+        public final Node start;
+        public final String path;
+
+        public PathKey(Node start, String path) {
+            this.start = start;
+            this.path = path;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof PathKey)) return false;
+            PathKey other = (PathKey) o;
+            return start.equals(other.start) && path.equals(other.path);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * start.hashCode() + path.hashCode();
+        }
+    }
+
+    private static final class Value {
+        public final Object value;
+        public final long expires;
+        public Map<String, Node> index = null;
+
+        public Value(Object value, long expires) {
+            this.value = value;
+            this.expires = expires;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package com.avevad.cloud9.core;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.net.UnknownHostException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
+
+public final class NIOConnection implements CloudConnection {
+    public static final int DEFAULT_BUFFER_SIZE = 256 * 1024; // 256 KiB
+
+    private final String host;
+    private final int port;
+    private final int receiveBufferSize;
+    private final int sendBufferSize;
+    private final SocketChannel channel;
+    private final ByteBuffer recvBuffer;
+    private final ByteBuffer sendBuffer;
+
+    public NIOConnection(String host, int port, int receiveBufferSize, int sendBufferSize) throws IOException {
+        this.host = host;
+        this.port = port;
+        this.receiveBufferSize = receiveBufferSize;
+        this.sendBufferSize = sendBufferSize;
+        InetSocketAddress address = new InetSocketAddress(host, port);
+        if (address.isUnresolved()) throw new UnknownHostException(host);
+        channel = SocketChannel.open();
+        try {
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            channel.setOption(StandardSocketOptions.SO_RCVBUF, receiveBufferSize);
+            channel.setOption(StandardSocketOptions.SO_SNDBUF, sendBufferSize);
+            channel.connect(address);
+        } catch (IOException e) {
+            channel.close();
+            throw e;
+        }
+        recvBuffer = ByteBuffer.allocateDirect(receiveBufferSize);
+        sendBuffer = ByteBuffer.allocateDirect(sendBufferSize);
+    }
+
+    public NIOConnection(String host, int port) throws IOException {
+        this(host, port, DEFAULT_BUFFER_SIZE, DEFAULT_BUFFER_SIZE);
+    }
+
+    @Override
+    public int recv(byte[] buffer, int offset, int size) throws IOException {
+        recvBuffer.clear();
+        recvBuffer.limit(Integer.min(size, recvBuffer.capacity()));
+        int read = recv(recvBuffer);
+        recvBuffer.flip();
+        recvBuffer.get(buffer, offset, read);
+        return read;
+    }
+
+    @Override
+    public int send(byte[] buffer, int offset, int size) throws IOException {
+        int pos = 0;
+        while (pos < size) {
+            if (!sendBuffer.hasRemaining()) flush();
+            int chunk = Integer.min(size - pos, sendBuffer.remaining());
+            sendBuffer.put(buffer, offset + pos, chunk);
+            pos += chunk;
+        }
+        return size;
+    }
+
+    @Override
+    public int recv(ByteBuffer buffer) throws IOException {
+        int read = channel.read(buffer);
+        if (read == -1) throw new IOException("end of stream");
+        return read;
+    }
+
+    @Override
+    public int send(ByteBuffer buffer) throws IOException {
+        flush();
+        return channel.write(buffer);
+    }
+
+    @Override
+    public long send(ByteBuffer[] buffers) throws IOException {
+        flush();
+        return channel.write(buffers);
+    }
+
+    @Override
+    public long recv(FileChannel file, long position, long count, ByteBuffer buffer) throws IOException {
+        // transferFrom copies from a socket through a buffer as well, but would not tell a failing disk from a failing socket
+        buffer.clear();
+        buffer.limit((int) Long.min(buffer.capacity(), count));
+        if (channel.read(buffer) == -1) throw new IOException("end of stream");
+        buffer.flip();
+        int read = buffer.remaining();
+        Helper.writeFile(file, buffer, position);
+        return read;
+    }
+
+    @Override
+    public long send(FileChannel file, long position, long count, ByteBuffer buffer) throws IOException {
+        flush();
+        long sent = file.transferTo(position, count, channel);
+        if (sent == 0) throw new EOFException();
+        return sent;
+    }
+
+    @Override
+    public void flush() throws IOException {
+        sendBuffer.flip();
+        while (sendBuffer.hasRemaining()) channel.write(sendBuffer);
+        sendBuffer.clear();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return channel.isOpen();
+    }
+
+    @Override
+    public CloudConnection reconnect() throws IOException {
+        return new NIOConnection(host, port, receiveBufferSize, sendBufferSize);
+    }
+
+    @Override
+    public void close() {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+}
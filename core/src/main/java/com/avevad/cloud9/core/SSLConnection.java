@@ -2,24 +2,31 @@ package com.avevad.cloud9.core;
 
 import javax.net.ssl.SSLSocket;
 import javax.net.ssl.SSLSocketFactory;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.nio.ByteBuffer;
 
 public class SSLConnection implements CloudConnection {
+    private static final int TRANSFER_BUFFER_SIZE = 64 * 1024; // 64 KiB
+
     private final String host;
     private final int port;
     private final SSLSocket socket;
     private final InputStream in;
     private final OutputStream out;
+    private final byte[] recvArray = new byte[TRANSFER_BUFFER_SIZE];
+    private final byte[] sendArray = new byte[TRANSFER_BUFFER_SIZE];
 
     public SSLConnection(String host, int port) throws IOException {
         this.host = host;
         this.port = port;
         socket = (SSLSocket) SSLSocketFactory.getDefault().createSocket(host, port);
+        socket.setTcpNoDelay(true);
         socket.startHandshake();
         in = socket.getInputStream();
-        out = socket.getOutputStream();
+        out = new BufferedOutputStream(socket.getOutputStream(), TRANSFER_BUFFER_SIZE);
     }
 
     @Override
@@ -36,8 +43,24 @@ public class SSLConnection implements CloudConnection {
     }
 
     @Override
-    public void flush() throws IOException {
+    public int recv(ByteBuffer buffer) throws IOException {
+        if (buffer.hasArray()) return CloudConnection.super.recv(buffer);
+        int read = recv(recvArray, 0, Integer.min(buffer.remaining(), recvArray.length));
+        buffer.put(recvArray, 0, read);
+        return read;
+    }
 
+    @Override
+    public int send(ByteBuffer buffer) throws IOException {
+        if (buffer.hasArray()) return CloudConnection.super.send(buffer);
+        int size = Integer.min(buffer.remaining(), sendArray.length);
+        buffer.get(sendArray, 0, size);
+        return send(sendArray, 0, size);
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
     }
 
     @Override
@@ -1,11 +1,14 @@
 package com.avevad.cloud9.core;
 
+import java.io.BufferedOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.Socket;
 
 public final class TCPConnection implements CloudConnection {
+    private static final int SEND_BUFFER_SIZE = 64 * 1024; // 64 KiB
+
     private final String host;
     private final int port;
     private final Socket socket;
@@ -16,8 +19,9 @@ public final class TCPConnection implements CloudConnection {
         this.host = host;
         this.port = port;
         socket = new Socket(host, port);
+        socket.setTcpNoDelay(true);
         in = socket.getInputStream();
-        out = socket.getOutputStream();
+        out = new BufferedOutputStream(socket.getOutputStream(), SEND_BUFFER_SIZE);
     }
 
 
@@ -0,0 +1,41 @@
+package com.avevad.cloud9.core.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Pool of byte arrays grouped into power-of-two size classes.
+ * Arrays larger than the biggest class are allocated on demand and never retained.
+ */
+public final class BufferPool {
+    private final int minShift;
+    private final List<BlockingQueue<byte[]>> classes;
+
+    public BufferPool(int minSize, int maxSize, int buffersPerClass) {
+        if (Integer.bitCount(minSize) != 1 || Integer.bitCount(maxSize) != 1 || minSize > maxSize)
+            throw new IllegalArgumentException("sizes must be powers of two");
+        minShift = Integer.numberOfTrailingZeros(minSize);
+        int count = Integer.numberOfTrailingZeros(maxSize) - minShift + 1;
+        classes = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) classes.add(new ArrayBlockingQueue<>(buffersPerClass));
+    }
+
+    public byte[] acquire(int size) {
+        int index = classIndex(size);
+        if (index >= classes.size()) return new byte[size];
+        byte[] buffer = classes.get(index).poll();
+        return buffer != null ? buffer : new byte[1 << (minShift + index)];
+    }
+
+    public void release(byte[] buffer) {
+        int index = classIndex(buffer.length);
+        if (index < classes.size() && buffer.length == 1 << (minShift + index)) classes.get(index).offer(buffer);
+    }
+
+    private int classIndex(int size) {
+        if (size <= 1 << minShift) return 0;
+        return 32 - Integer.numberOfLeadingZeros(size - 1) - minShift;
+    }
+}
@@ -0,0 +1,141 @@
+package com.avevad.cloud9.core.util;
+
+import com.avevad.cloud9.core.CloudCommon.Node;
+
+import java.util.Arrays;
+import java.util.function.BiConsumer;
+
+/**
+ * Open-addressed hash map keyed by node ids stored inline as pairs of longs.
+ * Keys are only materialized as {@link Node} objects while iterating.
+ */
+public final class NodeMap<V> {
+    private long[] keys;
+    private Object[] values;
+    private boolean[] used;
+    private int size = 0;
+
+    public NodeMap() {
+        this(0);
+    }
+
+    public NodeMap(int expectedSize) {
+        allocate(NodeSet.capacityFor(expectedSize));
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean containsKey(Node node) {
+        return find(node.high, node.low) >= 0;
+    }
+
+    public V get(Node node) {
+        return get(node.high, node.low);
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long high, long low) {
+        int index = find(high, low);
+        return index < 0 ? null : (V) values[index];
+    }
+
+    public V put(Node node, V value) {
+        return put(node.high, node.low, value);
+    }
+
+    @SuppressWarnings("unchecked")
+    public V put(long high, long low, V value) {
+        int index = find(high, low);
+        if (index >= 0) {
+            V previous = (V) values[index];
+            values[index] = value;
+            return previous;
+        }
+        if ((size + 1) * 4L > used.length * 3L) resize(used.length * 2);
+        insert(high, low, value);
+        size++;
+        return null;
+    }
+
+    public V remove(Node node) {
+        return remove(node.high, node.low);
+    }
+
+    @SuppressWarnings("unchecked")
+    public V remove(long high, long low) {
+        int index = find(high, low);
+        if (index < 0) return null;
+        V previous = (V) values[index];
+        delete(index);
+        size--;
+        return previous;
+    }
+
+    public void clear() {
+        Arrays.fill(used, false);
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEach(BiConsumer<Node, V> action) {
+        for (int i = 0; i < used.length; i++) {
+            if (used[i]) action.accept(new Node(keys[i * 2], keys[i * 2 + 1]), (V) values[i]);
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity * 2];
+        values = new Object[capacity];
+        used = new boolean[capacity];
+    }
+
+    private int find(long high, long low) {
+        int mask = used.length - 1;
+        for (int i = Node.hash(high, low) & mask; used[i]; i = (i + 1) & mask) {
+            if (keys[i * 2] == high && keys[i * 2 + 1] == low) return i;
+        }
+        return -1;
+    }
+
+    private void insert(long high, long low, Object value) {
+        int mask = used.length - 1;
+        int i = Node.hash(high, low) & mask;
+        while (used[i]) i = (i + 1) & mask;
+        keys[i * 2] = high;
+        keys[i * 2 + 1] = low;
+        values[i] = value;
+        used[i] = true;
+    }
+
+    private void delete(int index) {
+        int mask = used.length - 1;
+        int hole = index;
+        for (int i = (index + 1) & mask; used[i]; i = (i + 1) & mask) {
+            int home = Node.hash(keys[i * 2], keys[i * 2 + 1]) & mask;
+            if (((i - home) & mask) < ((i - hole) & mask)) continue;
+            keys[hole * 2] = keys[i * 2];
+            keys[hole * 2 + 1] = keys[i * 2 + 1];
+            values[hole] = values[i];
+            hole = i;
+        }
+        used[hole] = false;
+        values[hole] = null;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        boolean[] oldUsed = used;
+        allocate(capacity);
+        for (int i = 0; i < oldUsed.length; i++) {
+            if (oldUsed[i]) insert(oldKeys[i * 2], oldKeys[i * 2 + 1], oldValues[i]);
+        }
+    }
+}
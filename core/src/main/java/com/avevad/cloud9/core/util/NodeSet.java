@@ -0,0 +1,127 @@
+package com.avevad.cloud9.core.util;
+
+import com.avevad.cloud9.core.CloudCommon.Node;
+
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+/**
+ * Open-addressed hash set of node ids stored inline as pairs of longs.
+ * Elements are only materialized as {@link Node} objects while iterating.
+ */
+public final class NodeSet {
+    private static final int MIN_CAPACITY = 16;
+
+    private long[] keys;
+    private boolean[] used;
+    private int size = 0;
+
+    public NodeSet() {
+        this(0);
+    }
+
+    public NodeSet(int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    static int capacityFor(int expectedSize) {
+        int capacity = MIN_CAPACITY;
+        while (capacity / 4 * 3 < expectedSize) capacity <<= 1;
+        return capacity;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public boolean contains(Node node) {
+        return contains(node.high, node.low);
+    }
+
+    public boolean contains(long high, long low) {
+        return find(high, low) >= 0;
+    }
+
+    public boolean add(Node node) {
+        return add(node.high, node.low);
+    }
+
+    public boolean add(long high, long low) {
+        if (find(high, low) >= 0) return false;
+        if ((size + 1) * 4L > used.length * 3L) resize(used.length * 2);
+        insert(high, low);
+        size++;
+        return true;
+    }
+
+    public boolean remove(Node node) {
+        return remove(node.high, node.low);
+    }
+
+    public boolean remove(long high, long low) {
+        int index = find(high, low);
+        if (index < 0) return false;
+        delete(index);
+        size--;
+        return true;
+    }
+
+    public void clear() {
+        Arrays.fill(used, false);
+        size = 0;
+    }
+
+    public void forEach(Consumer<Node> action) {
+        for (int i = 0; i < used.length; i++) {
+            if (used[i]) action.accept(new Node(keys[i * 2], keys[i * 2 + 1]));
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity * 2];
+        used = new boolean[capacity];
+    }
+
+    private int find(long high, long low) {
+        int mask = used.length - 1;
+        for (int i = Node.hash(high, low) & mask; used[i]; i = (i + 1) & mask) {
+            if (keys[i * 2] == high && keys[i * 2 + 1] == low) return i;
+        }
+        return -1;
+    }
+
+    private void insert(long high, long low) {
+        int mask = used.length - 1;
+        int i = Node.hash(high, low) & mask;
+        while (used[i]) i = (i + 1) & mask;
+        keys[i * 2] = high;
+        keys[i * 2 + 1] = low;
+        used[i] = true;
+    }
+
+    private void delete(int index) {
+        int mask = used.length - 1;
+        int hole = index;
+        for (int i = (index + 1) & mask; used[i]; i = (i + 1) & mask) {
+            int home = Node.hash(keys[i * 2], keys[i * 2 + 1]) & mask;
+            if (((i - home) & mask) < ((i - hole) & mask)) continue;
+            keys[hole * 2] = keys[i * 2];
+            keys[hole * 2 + 1] = keys[i * 2 + 1];
+            hole = i;
+        }
+        used[hole] = false;
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        boolean[] oldUsed = used;
+        allocate(capacity);
+        for (int i = 0; i < oldUsed.length; i++) {
+            if (oldUsed[i]) insert(oldKeys[i * 2], oldKeys[i * 2 + 1]);
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package com.avevad.cloud9.core.util;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Open-addressed table of values keyed by request id.
+ * Lookups and removals are lock-free and may run from any thread, insertions must be serialized by the caller.
+ * Once closed, the table rejects new values and hands all the remaining ones to the closing thread.
+ */
+public final class PendingTable<V> {
+    private static final Entry<?> MOVED = new Entry<>(0, null);
+
+    private volatile AtomicReferenceArray<Entry<V>> table;
+    private final AtomicInteger size = new AtomicInteger();
+    private volatile boolean closed = false;
+
+    public PendingTable(int capacity) {
+        int length = 1;
+        while (length < capacity) length <<= 1;
+        table = new AtomicReferenceArray<>(length);
+    }
+
+    public boolean put(int key, V value) {
+        Entry<V> entry = new Entry<>(key, value);
+        if (size.incrementAndGet() > table.length() / 4 * 3) grow();
+        while (!insert(table, entry)) grow();
+        return !closed || remove(key) == null;
+    }
+
+    public V remove(int key) {
+        while (true) {
+            AtomicReferenceArray<Entry<V>> current = table;
+            int mask = current.length() - 1;
+            boolean moved = false;
+            for (int i = 0; i <= mask; i++) {
+                int index = (key + i) & mask;
+                Entry<V> entry = current.get(index);
+                if (entry == MOVED) {
+                    moved = true;
+                    break;
+                }
+                if (entry == null || entry.key != key) continue;
+                if (current.compareAndSet(index, entry, null)) {
+                    size.decrementAndGet();
+                    return entry.value;
+                }
+                if (current.get(index) != MOVED) return null;
+                moved = true;
+                break;
+            }
+            if (!moved) return null;
+            awaitGrow(current);
+        }
+    }
+
+    public List<V> close() {
+        closed = true;
+        return removeAll();
+    }
+
+    public List<V> removeAll() {
+        List<V> values = new ArrayList<>();
+        AtomicReferenceArray<Entry<V>> current;
+        do {
+            current = table;
+            for (int i = 0; i < current.length(); i++) {
+                Entry<V> entry = current.get(i);
+                if (entry == MOVED) {
+                    awaitGrow(current);
+                    break;
+                }
+                if (entry != null && current.compareAndSet(i, entry, null)) {
+                    size.decrementAndGet();
+                    values.add(entry.value);
+                } else if (entry != null) i--;
+            }
+        } while (table != current);
+        return values;
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    private boolean insert(AtomicReferenceArray<Entry<V>> table, Entry<V> entry) {
+        int mask = table.length() - 1;
+        for (int i = 0; i <= mask; i++) {
+            if (table.compareAndSet((entry.key + i) & mask, null, entry)) return true;
+        }
+        return false;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void grow() {
+        AtomicReferenceArray<Entry<V>> current = table;
+        AtomicReferenceArray<Entry<V>> next = new AtomicReferenceArray<>(current.length() * 2);
+        for (int i = 0; i < current.length(); i++) {
+            Entry<V> entry = current.getAndSet(i, (Entry<V>) MOVED);
+            if (entry != null) insert(next, entry);
+        }
+        table = next;
+    }
+
+    private void awaitGrow(AtomicReferenceArray<Entry<V>> current) {
+        while (table == current) Thread.yield();
+    }
+
+    private static final class Entry<V> {
+        public final int key;
+        public final V value;
+
+        public Entry(int key, V value) {
+            this.key = key;
+            this.value = value;
+        }
+    }
+}
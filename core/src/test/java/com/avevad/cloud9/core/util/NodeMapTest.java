@@ -0,0 +1,58 @@
+package com.avevad.cloud9.core.util;
+
+import com.avevad.cloud9.core.CloudCommon.Node;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class NodeMapTest {
+    @Test
+    public void putReplacesTheValue() {
+        NodeMap<String> map = new NodeMap<>();
+        Node node = new Node(1, 2);
+        assertNull(map.put(node, "a"));
+        assertEquals("a", map.put(new Node(1, 2), "b"));
+        assertEquals("b", map.get(node));
+        assertNull(map.get(2, 1));
+        assertTrue(map.containsKey(node));
+        assertEquals(1, map.size());
+    }
+
+    @Test
+    public void removalKeepsCollidingKeysReachable() {
+        NodeMap<Integer> map = new NodeMap<>();
+        List<Node> colliding = NodeSetTest.collidingNodes(4);
+        for (int i = 0; i < colliding.size(); i++) map.put(colliding.get(i), i);
+        assertEquals(Integer.valueOf(1), map.remove(colliding.get(1)));
+        assertNull(map.remove(colliding.get(1)));
+        assertFalse(map.containsKey(colliding.get(1)));
+        assertEquals(Integer.valueOf(0), map.get(colliding.get(0)));
+        assertEquals(Integer.valueOf(2), map.get(colliding.get(2)));
+        assertEquals(Integer.valueOf(3), map.get(colliding.get(3)));
+        assertEquals(3, map.size());
+    }
+
+    @Test
+    public void growingMapMatchesHashMap() {
+        NodeMap<Integer> map = new NodeMap<>();
+        Map<Node, Integer> expected = new HashMap<>();
+        Random random = new Random(2);
+        for (int i = 0; i < 100_000; i++) {
+            Node node = new Node(random.nextInt(1000), random.nextInt(100));
+            if (random.nextInt(3) == 0) assertEquals(expected.remove(node), map.remove(node));
+            else assertEquals(expected.put(node, i), map.put(node, i));
+        }
+        assertEquals(expected.size(), map.size());
+        Map<Node, Integer> actual = new HashMap<>();
+        map.forEach(actual::put);
+        assertEquals(expected, actual);
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertNull(map.get(expected.keySet().iterator().next()));
+    }
+}
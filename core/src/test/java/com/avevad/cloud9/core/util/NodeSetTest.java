@@ -0,0 +1,68 @@
+package com.avevad.cloud9.core.util;
+
+import com.avevad.cloud9.core.CloudCommon.Node;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class NodeSetTest {
+    @Test
+    public void addedNodesAreContained() {
+        NodeSet set = new NodeSet();
+        Node node = new Node(1, 2);
+        assertTrue(set.isEmpty());
+        assertTrue(set.add(node));
+        assertFalse(set.add(new Node(1, 2)));
+        assertTrue(set.contains(node));
+        assertTrue(set.contains(1, 2));
+        assertFalse(set.contains(2, 1));
+        assertEquals(1, set.size());
+    }
+
+    @Test
+    public void removalKeepsCollidingNodesReachable() {
+        NodeSet set = new NodeSet();
+        List<Node> colliding = collidingNodes(4);
+        for (Node node : colliding) set.add(node);
+        assertTrue(set.remove(colliding.get(1)));
+        assertFalse(set.remove(colliding.get(1)));
+        assertFalse(set.contains(colliding.get(1)));
+        assertTrue(set.contains(colliding.get(0)));
+        assertTrue(set.contains(colliding.get(2)));
+        assertTrue(set.contains(colliding.get(3)));
+        assertEquals(3, set.size());
+    }
+
+    @Test
+    public void growingSetMatchesHashSet() {
+        NodeSet set = new NodeSet();
+        Set<Node> expected = new HashSet<>();
+        Random random = new Random(1);
+        for (int i = 0; i < 100_000; i++) {
+            Node node = new Node(random.nextInt(1000), random.nextInt(100));
+            if (random.nextInt(3) == 0) assertEquals(expected.remove(node), set.remove(node));
+            else assertEquals(expected.add(node), set.add(node));
+        }
+        assertEquals(expected.size(), set.size());
+        Set<Node> actual = new HashSet<>();
+        set.forEach(actual::add);
+        assertEquals(expected, actual);
+        set.clear();
+        assertTrue(set.isEmpty());
+        assertFalse(set.contains(expected.iterator().next()));
+    }
+
+    static List<Node> collidingNodes(int count) {
+        List<Node> nodes = new ArrayList<>();
+        for (long low = 0; nodes.size() < count; low++) {
+            if ((Node.hash(0, low) & 0xF) == 0) nodes.add(new Node(0, low));
+        }
+        return nodes;
+    }
+}
@@ -3,9 +3,14 @@ package com.avevad.cloud9.desktop;
 import java.io.Serializable;
 
 public final class Config implements Serializable {
+    private static final long serialVersionUID = -1070333514948869754L;
+
     public String lastQuickHost = null;
     public Integer lastQuickPort = null;
     public String lastQuickLogin = null;
     public Boolean lastQuickSecure = null;
+    public Boolean lastQuickCompress = null;
     public String lookAndFeel = null;
+    public Long mappedDownloadLimit = null;
+    public Integer transferConnections = null;
 }
@@ -21,6 +21,18 @@ public final class DesktopCommon {
     }
 
     public static final int BUFFER_SIZE = 640 * 1024; // 640 KiB
+    public static final long MAPPED_DOWNLOAD_LIMIT = 256 * 1024 * 1024; // 256 MiB
+    public static final long MAPPED_WINDOW_SIZE = 16 * 1024 * 1024; // 16 MiB
+    public static final long SEGMENTED_DOWNLOAD_THRESHOLD = 64 * 1024 * 1024; // 64 MiB
+    public static final int CONNECTION_BUFFER_SIZE = 64 * 1024; // 64 KiB
+    public static final int TRANSFER_CONNECTIONS = 4;
+    public static final int CLIENT_POOL_SIZE = TRANSFER_CONNECTIONS;
+    public static final long CLIENT_POOL_IDLE_TIMEOUT = 60 * 1000; // 1 minute
+    public static final int TRANSFER_RETRIES = 5;
+    public static final long TRANSFER_RETRY_DELAY = 1000; // 1 second
+    public static final long JOURNAL_CHECKPOINT_INTERVAL = 8 * 1024 * 1024; // 8 MiB
+    public static final int METADATA_CACHE_SIZE = 64 * 1024;
+    public static final long METADATA_CACHE_TTL = 30 * 1000; // 30 seconds
 
     public static final String STRINGS_BUNDLE = "assets/bundles/strings";
     private static final ResourceBundle stringsBundle = ResourceBundle.getBundle(STRINGS_BUNDLE);
@@ -61,6 +73,14 @@ public final class DesktopCommon {
         return config;
     }
 
+    public static int getTransferConnections() {
+        return config.transferConnections == null ? TRANSFER_CONNECTIONS : config.transferConnections;
+    }
+
+    public static long getMappedDownloadLimit() {
+        return config.mappedDownloadLimit == null ? MAPPED_DOWNLOAD_LIMIT : config.mappedDownloadLimit;
+    }
+
     public static String string(String key, Object... args) {
         return String.format(stringsBundle.getString(key), args);
     }
@@ -81,6 +101,7 @@ public final class DesktopCommon {
     public static final String STRING_UNKNOWN_HOST = "unknown_host";
     public static final String STRING_NEGOTIATION_ERROR = "negotiation_error";
     public static final String STRING_SECURE_CONNECTION = "secure_connection";
+    public static final String STRING_COMPRESS_TRAFFIC = "compress_traffic";
     public static final String STRING_AUTH_FAILED = "auth_failed";
     public static final String STRING_FILE_TYPE = "file_type";
     public static final String STRING_FILE_NAME = "file_name";
@@ -186,6 +207,8 @@ public final class DesktopCommon {
     }
 
     public static final String CONFIG_FILE = "config.bin";
+    public static final String TRANSFERS_DIR = "transfers";
+    public static final String JOURNAL_EXTENSION = ".journal";
     public static final String DOWNLOADS_DIR = string(STRING_DOWNLOADS);
 
 
@@ -118,9 +118,28 @@ public final class HomeTabPanel {
         c.fill = GridBagConstraints.BOTH;
         panel.add(quickSecureCheck, c);
 
-        JButton quickButton = new JButton(string(STRING_CONNECT));
+        JLabel quickCompressLabel = new JLabel(string(STRING_COMPRESS_TRAFFIC));
+        quickCompressLabel.setHorizontalAlignment(SwingConstants.LEFT);
+        quickCompressLabel.setVerticalAlignment(SwingConstants.CENTER);
         c.gridx = 0;
         c.gridy = 5;
+        c.gridwidth = 2;
+        c.gridheight = 1;
+        c.fill = GridBagConstraints.BOTH;
+        panel.add(quickCompressLabel, c);
+
+        JCheckBox quickCompressCheck = new JCheckBox();
+        if (getConfig().lastQuickCompress != null) quickCompressCheck.setSelected(getConfig().lastQuickCompress);
+        c.gridx = 2;
+        c.gridy = 5;
+        c.gridwidth = 2;
+        c.gridheight = 1;
+        c.fill = GridBagConstraints.BOTH;
+        panel.add(quickCompressCheck, c);
+
+        JButton quickButton = new JButton(string(STRING_CONNECT));
+        c.gridx = 0;
+        c.gridy = 6;
         c.gridwidth = 4;
         c.gridheight = 1;
         c.fill = GridBagConstraints.NONE;
@@ -162,6 +181,7 @@ public final class HomeTabPanel {
                     getConfig().lastQuickPort = Integer.parseInt(quickPortField.getText());
                     getConfig().lastQuickLogin = quickLoginField.getText();
                     getConfig().lastQuickSecure = quickSecureCheck.isSelected();
+                    getConfig().lastQuickCompress = quickCompressCheck.isSelected();
                     saveConfig();
                     Holder<String> error = new Holder<>();
                     Holder<CloudClient> controlClient = new Holder<>();
@@ -170,10 +190,13 @@ public final class HomeTabPanel {
                         if (quickSecureCheck.isSelected()) {
                             controlConnection = new SSLConnection(quickHostField.getText(), Integer.parseInt(quickPortField.getText()));
                         } else {
-                            controlConnection = new TCPConnection(quickHostField.getText(), Integer.parseInt(quickPortField.getText()));
+                            controlConnection = new NIOConnection(quickHostField.getText(), Integer.parseInt(quickPortField.getText()));
                         }
+                        controlConnection = new BufferedConnection(controlConnection, CONNECTION_BUFFER_SIZE);
                         Holder<String> password = new Holder<>();
-                        controlClient.value = new CloudClient(controlConnection, quickLoginField.getText(), () -> password.value = new String(quickPasswordField.getPassword()));
+                        CloudClient client = new CloudClient(controlConnection, quickLoginField.getText(), () -> password.value = new String(quickPasswordField.getPassword()), quickCompressCheck.isSelected());
+                        client.setAutoReconnect(true);
+                        controlClient.value = client;
                     } catch (UnknownHostException ex) {
                         error.value = string(STRING_UNKNOWN_HOST, ex.getMessage());
                     } catch (IOException ex) {
@@ -182,6 +205,8 @@ public final class HomeTabPanel {
                         error.value = string(STRING_AUTH_FAILED, string(initStatusString(ex.status)));
                     } catch (CloudClient.ProtocolException ex) {
                         error.value = string(STRING_NEGOTIATION_ERROR);
+                    } catch (CloudClient.RequestException ex) {
+                        error.value = string(STRING_REQUEST_ERROR, string(requestStatusString(ex.status)));
                     }
                     SwingUtilities.invokeLater(() -> {
                         quickPasswordField.setText("");
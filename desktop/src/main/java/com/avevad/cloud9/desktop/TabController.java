@@ -1,6 +1,8 @@
 package com.avevad.cloud9.desktop;
 
 import com.avevad.cloud9.core.CloudClient;
+import com.avevad.cloud9.core.CloudClientPool;
+import com.avevad.cloud9.core.MetadataCache;
 import com.avevad.cloud9.core.util.Holder;
 import com.avevad.cloud9.core.util.Pair;
 import com.avevad.cloud9.core.util.TaskQueue;
@@ -34,6 +36,7 @@ public final class TabController {
             STROKE_SAVE = KeyStroke.getKeyStroke("ctrl S");
     public final WindowController windowController;
     private final CloudClient controlClient;
+    private final CloudClientPool clientPool;
     private final String title;
     private TasksPanel tasksPanel = new TasksPanel();
     public final JPanel root = new JPanel();
@@ -70,6 +73,8 @@ public final class TabController {
 
         this.windowController = windowController;
         this.controlClient = controlClient;
+        controlClient.setMetadataCache(new MetadataCache(METADATA_CACHE_SIZE, METADATA_CACHE_TTL));
+        clientPool = new CloudClientPool(controlClient, CLIENT_POOL_SIZE, CLIENT_POOL_IDLE_TIMEOUT);
 
         root.setLayout(new BorderLayout());
 
@@ -126,6 +131,7 @@ public final class TabController {
         panel.add(contentPanel, CARD_CONTENT);
 
         ActionListener goListener = e -> {
+            controlClient.getMetadataCache().clear();
             String path = pathField.getText();
             Node start;
             int splitPos = path.indexOf(CLOUD_PATH_SEP);
@@ -208,7 +214,7 @@ public final class TabController {
             chooser.setFileSelectionMode(JFileChooser.FILES_AND_DIRECTORIES);
             chooser.setMultiSelectionEnabled(true);
             if (chooser.showOpenDialog(windowController.frame) == JFileChooser.APPROVE_OPTION) {
-                UploadTask task = new UploadTask(controlClient, chooser.getSelectedFiles(), node);
+                UploadTask task = new UploadTask(clientPool, chooser.getSelectedFiles(), node, getTransferConnections());
                 TasksPanel.TaskCallback callback = tasksPanel.addTask(string(STRING_TASK_UPLOAD), task);
                 showTasksPanel();
                 dataQueue.submit(task.start(callback));
@@ -227,7 +233,7 @@ public final class TabController {
             List<Pair<Node, String>> nodes = new LinkedList<>();
             for (int row : rows) nodes.add(new Pair<>(content.get(row).node, content.get(row).name));
             DOWNLOADS_DIRECTORY.mkdir();
-            DownloadTask task = new DownloadTask(controlClient, nodes, DOWNLOADS_DIRECTORY);
+            DownloadTask task = new DownloadTask(clientPool, nodes, DOWNLOADS_DIRECTORY, getTransferConnections(), getMappedDownloadLimit());
             TasksPanel.TaskCallback callback = tasksPanel.addTask(string(STRING_TASK_DOWNLOAD), task);
             showTasksPanel();
             dataQueue.submit(task.start(callback));
@@ -244,7 +250,7 @@ public final class TabController {
             for (int i = 0; i < rows.length; i++) rows[i] = table.convertRowIndexToModel(rows[i]);
             Node[] nodes = new Node[rows.length];
             for (int pos = 0; pos < nodes.length; pos++) nodes[pos] = content.get(rows[pos]).node;
-            DeleteTask task = new DeleteTask(controlClient, nodes);
+            DeleteTask task = new DeleteTask(clientPool, nodes);
             TasksPanel.TaskCallback callback = tasksPanel.addTask(string(STRING_TASK_DELETE), task);
             showTasksPanel();
             dataQueue.submit(task.start(callback));
@@ -341,6 +347,7 @@ public final class TabController {
             JOptionPane.showMessageDialog(windowController.frame, string(STRING_WAIT_FOR_TASKS), title, JOptionPane.INFORMATION_MESSAGE);
             return false;
         }
+        clientPool.close();
         controlClient.disconnect();
         return true;
     }
@@ -397,11 +404,10 @@ public final class TabController {
                 SwingUtilities.invokeLater(() -> statusLabel.setText(STRING_LOADING));
                 Holder<Integer> fileCount = new Holder<>(0);
                 Holder<Integer> directoryCount = new Holder<>(0);
-                controlClient.listDirectory(node, (child, name) -> {
+                controlClient.listDirectoryInfo(node, (child, name, nodeInfo) -> {
                     DirectoryEntry entry = new DirectoryEntry();
                     entry.node = child;
                     entry.name = name;
-                    CloudClient.NodeInfo nodeInfo = controlClient.getNodeInfo(child);
                     entry.type = nodeInfo.type;
                     if (nodeInfo.type == NODE_TYPE_DIRECTORY) directoryCount.value++;
                     if (nodeInfo.type == NODE_TYPE_FILE) fileCount.value++;
@@ -1,6 +1,7 @@
 package com.avevad.cloud9.desktop.tasks;
 
 import com.avevad.cloud9.core.CloudClient;
+import com.avevad.cloud9.core.CloudClientPool;
 
 import javax.swing.*;
 import java.io.IOException;
@@ -15,8 +16,8 @@ public class DeleteTask extends SimpleTaskBase {
     private Node[] nodes;
     private List<Node> nodesToDelete = new LinkedList<>();
 
-    public DeleteTask(CloudClient client, Node[] nodes) {
-        super(client);
+    public DeleteTask(CloudClientPool pool, Node[] nodes) {
+        super(pool);
         this.nodes = nodes;
     }
 
@@ -37,11 +38,14 @@ public class DeleteTask extends SimpleTaskBase {
     }
 
     private void countFiles(Node node) throws IOException, CloudClient.RequestException {
+        countFiles(node, client.getNodeInfo(node).type);
+    }
+
+    private void countFiles(Node node, byte type) throws IOException, CloudClient.RequestException {
         if (isCancelled()) return;
         waitResume();
-        byte type = client.getNodeInfo(node).type;
         if (type == NODE_TYPE_DIRECTORY) {
-            client.listDirectory(node, (child, name) -> countFiles(child));
+            client.listDirectoryInfo(node, (child, name, info) -> countFiles(child, info.type));
             nodesToDelete.add(node);
         } else if (type == NODE_TYPE_FILE) nodesToDelete.add(node);
     }
@@ -1,75 +1,270 @@
 package com.avevad.cloud9.desktop.tasks;
 
 import com.avevad.cloud9.core.CloudClient;
+import com.avevad.cloud9.core.CloudClientPool;
 import com.avevad.cloud9.core.util.Holder;
+import com.avevad.cloud9.core.util.NodeSet;
 import com.avevad.cloud9.core.util.Pair;
 
 import javax.swing.*;
 import java.io.File;
-import java.io.FileOutputStream;
+import java.io.Flushable;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import static com.avevad.cloud9.core.CloudCommon.*;
 import static com.avevad.cloud9.desktop.DesktopCommon.*;
+import static java.nio.file.StandardOpenOption.*;
 
 public class DownloadTask extends SimpleTaskBase {
     private final List<Pair<Node, String>> nodes;
     private final File destination;
-    private final List<Pair<Node, File>> files = new ArrayList<>();
-    private final byte[] buffer = new byte[BUFFER_SIZE];
-    private long doneSize = 0;
+    private final List<RemoteFile> files = new ArrayList<>();
+    private final NodeSet visited = new NodeSet();
+    private final ThreadLocal<ByteBuffer> buffers = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(BUFFER_SIZE));
+    private final int connections;
+    private final long mappingLimit;
+    private final AtomicLong doneSize = new AtomicLong();
+    private final Map<String, Long> counted = new ConcurrentHashMap<>();
+    private final AtomicInteger doneFiles = new AtomicInteger();
+    private long totalSize = 0;
+    private TransferJournal journal = null;
 
-    public DownloadTask(CloudClient client, List<Pair<Node, String>> nodes, File destination) {
-        super(client);
+    public DownloadTask(CloudClientPool pool, List<Pair<Node, String>> nodes, File destination, int connections, long mappingLimit) {
+        super(pool);
         this.nodes = nodes;
         this.destination = destination;
+        this.connections = connections;
+        this.mappingLimit = mappingLimit;
+    }
+
+    public DownloadTask(CloudClientPool pool, List<Pair<Node, String>> nodes, File destination) {
+        this(pool, nodes, destination, TRANSFER_CONNECTIONS, MAPPED_DOWNLOAD_LIMIT);
     }
 
     @Override
     public void run() throws IOException, CloudClient.RequestException {
-        long totalSize = 0;
+        journal = new TransferJournal(journalKey());
+        try {
+            transfer();
+        } catch (IOException | CloudClient.RequestException e) {
+            journal.close();
+            throw e;
+        }
+        journal.delete();
+    }
+
+    private void transfer() throws IOException, CloudClient.RequestException {
         for (Pair<Node, String> p : nodes) totalSize += countFiles(p.a, p.b, destination);
-        long finalTotalSize = totalSize;
+        journal.flush();
         if (isCancelled()) return;
         try {
-            int done = 0;
             SwingUtilities.invokeLater(() -> callback.setStatus(string(STRING_DOWNLOADING, 0, files.size())));
-            for (Pair<Node, File> nodeFilePair : files) {
+            List<RemoteFile> wholeFiles = new ArrayList<>();
+            List<RemoteFile> segmentedFiles = new ArrayList<>();
+            for (RemoteFile file : files) {
+                if (journal.isCompleted(file.key)) {
+                    doneSize.addAndGet(file.size);
+                    updateStatus();
+                } else if (connections > 1 && file.size >= SEGMENTED_DOWNLOAD_THRESHOLD) segmentedFiles.add(file);
+                else wholeFiles.add(file);
+            }
+            if (!segmentedFiles.isEmpty() && !isSeekSupported(segmentedFiles.get(0).node)) {
+                wholeFiles.addAll(segmentedFiles);
+                segmentedFiles.clear();
+            }
+            for (RemoteFile file : wholeFiles) count(file.key);
+            for (RemoteFile file : segmentedFiles) {
+                for (Pair<Long, Long> segment : segments(file)) count(segmentKey(file, segment));
+            }
+            new TransferEngine<RemoteFile>(this, connections).run(client, wholeFiles, this::download);
+            for (RemoteFile file : segmentedFiles) {
                 if (isCancelled()) return;
-                Node node = nodeFilePair.a;
-                File file = nodeFilePair.b;
-                byte fd = client.openFD(node, FD_MODE_READ);
-                FileOutputStream out = new FileOutputStream(file);
-                client.longReadFD(fd, client.getNodeInfo(node).size, buffer, 0, BUFFER_SIZE, read -> {
-                    waitResume();
-                    out.write(buffer, 0, read);
-                    doneSize += read;
-                    SwingUtilities.invokeLater(() -> callback.setProgress((double) doneSize / finalTotalSize));
-                });
-                int finalDone = ++done;
-                SwingUtilities.invokeLater(() -> callback.setStatus(string(STRING_DOWNLOADING, finalDone, files.size())));
-                client.closeFD(fd);
+                downloadSegmented(file);
             }
         } catch (IOException e) {
             if (!isCancelled()) throw e;
         }
     }
 
+    private String journalKey() {
+        List<String> sources = new ArrayList<>();
+        for (Pair<Node, String> p : nodes) sources.add(p.a.toString());
+        Collections.sort(sources);
+        return "download:" + destination.getAbsolutePath() + ":" + String.join(",", sources);
+    }
+
+    private void download(CloudClient client, RemoteFile remoteFile) throws IOException, CloudClient.RequestException {
+        long size = remoteFile.size;
+        long done = journal.getOffset(remoteFile.key);
+        if (done > size || done > remoteFile.file.length()) done = resume(remoteFile.key, 0);
+        byte fd = client.openFD(remoteFile.node, FD_MODE_READ);
+        if (done > 0 && !trySeek(client, fd, done)) done = resume(remoteFile.key, 0);
+        if (done == 0 && size > 0 && size <= mappingLimit) {
+            // a mapping is only released once its buffer is garbage collected, so the file is mapped
+            // window by window and every window is forced as soon as it is filled
+            try (FileChannel out = FileChannel.open(remoteFile.file.toPath(), CREATE, READ, WRITE, TRUNCATE_EXISTING)) {
+                Holder<MappedByteBuffer> window = new Holder<>(null);
+                CloudClient.TransferCallback progress = progress(remoteFile.key, 0, () -> window.value.force());
+                for (long position = 0; position < size; position += MAPPED_WINDOW_SIZE) {
+                    long length = Long.min(MAPPED_WINDOW_SIZE, size - position);
+                    window.value = out.map(FileChannel.MapMode.READ_WRITE, position, length);
+                    client.longReadFD(fd, length, window.value, progress::call);
+                    window.value.force();
+                }
+            }
+        } else {
+            try (FileChannel out = done == 0
+                    ? FileChannel.open(remoteFile.file.toPath(), CREATE, WRITE, TRUNCATE_EXISTING)
+                    : FileChannel.open(remoteFile.file.toPath(), WRITE)) {
+                client.longReadFD(fd, size - done, out, done, buffers.get(), progress(remoteFile.key, done, () -> out.force(false)));
+                out.force(false);
+            }
+        }
+        client.closeFD(fd);
+        journal.complete(remoteFile.key);
+        updateStatus();
+    }
+
+    private void downloadSegmented(RemoteFile remoteFile) throws IOException, CloudClient.RequestException {
+        List<Pair<Long, Long>> segments = segments(remoteFile);
+        boolean resumed = false;
+        for (Pair<Long, Long> segment : segments) {
+            String key = segmentKey(remoteFile, segment);
+            if (journal.getOffset(key) == 0) continue;
+            if (remoteFile.file.exists()) resumed = true;
+            else resume(key, 0);
+        }
+        try (FileChannel out = resumed
+                ? FileChannel.open(remoteFile.file.toPath(), CREATE, WRITE)
+                : FileChannel.open(remoteFile.file.toPath(), CREATE, WRITE, TRUNCATE_EXISTING)) {
+            if (out.size() < remoteFile.size) out.write(ByteBuffer.allocate(1), remoteFile.size - 1);
+            new TransferEngine<Pair<Long, Long>>(this, connections).run(client, segments, (client, segment) -> {
+                String key = segmentKey(remoteFile, segment);
+                long done = journal.getOffset(key);
+                if (done > segment.b) done = resume(key, 0);
+                if (done == segment.b) return;
+                byte fd = client.openFD(remoteFile.node, FD_MODE_READ);
+                if (segment.a + done != 0) client.seekFD(fd, segment.a + done);
+                client.longReadFD(fd, segment.b - done, out, segment.a + done, buffers.get(), progress(key, done, () -> out.force(false)));
+                client.closeFD(fd);
+            });
+            out.force(false);
+        }
+        if (isCancelled()) return;
+        journal.complete(remoteFile.key);
+        updateStatus();
+    }
+
+    private List<Pair<Long, Long>> segments(RemoteFile remoteFile) {
+        long segmentSize = (remoteFile.size + connections - 1) / connections;
+        List<Pair<Long, Long>> segments = new ArrayList<>();
+        for (long start = 0; start < remoteFile.size; start += segmentSize) {
+            segments.add(new Pair<>(start, Long.min(segmentSize, remoteFile.size - start)));
+        }
+        return segments;
+    }
+
+    private static String segmentKey(RemoteFile remoteFile, Pair<Long, Long> segment) {
+        return remoteFile.key + "@" + segment.a;
+    }
+
+    private void count(String key) {
+        long offset = journal.getOffset(key);
+        counted.put(key, offset);
+        doneSize.addAndGet(offset);
+    }
+
+    private long resume(String key, long offset) {
+        journal.setOffset(key, offset);
+        return offset;
+    }
+
+    private CloudClient.TransferCallback progress(String key, long offset, Flushable output) {
+        updateProgress(offset - counted.getOrDefault(key, 0L));
+        counted.put(key, offset);
+        Holder<Long> position = new Holder<>(offset);
+        Holder<Long> checkpoint = new Holder<>(offset);
+        return read -> {
+            position.value += read;
+            counted.put(key, position.value);
+            if (position.value - checkpoint.value >= JOURNAL_CHECKPOINT_INTERVAL) {
+                output.flush();
+                journal.setOffset(key, position.value);
+                checkpoint.value = position.value;
+            }
+            updateProgress(read);
+        };
+    }
+
+    private boolean isSeekSupported(Node node) throws IOException, CloudClient.RequestException {
+        byte fd = client.openFD(node, FD_MODE_READ);
+        try {
+            return trySeek(client, fd, 0);
+        } finally {
+            client.closeFD(fd);
+        }
+    }
+
+    private static boolean trySeek(CloudClient client, byte fd, long offset) throws IOException, CloudClient.RequestException {
+        try {
+            client.seekFD(fd, offset);
+            return true;
+        } catch (CloudClient.RequestException e) {
+            if (e.status == REQUEST_ERR_INVALID_CMD || e.status == REQUEST_ERR_NOT_SUPPORTED) return false;
+            throw e;
+        }
+    }
+
+    private void updateProgress(long read) {
+        long done = doneSize.addAndGet(read);
+        SwingUtilities.invokeLater(() -> callback.setProgress((double) done / totalSize));
+        waitResume();
+    }
+
+    private void updateStatus() {
+        int done = doneFiles.incrementAndGet();
+        SwingUtilities.invokeLater(() -> callback.setStatus(string(STRING_DOWNLOADING, done, files.size())));
+    }
+
     private long countFiles(Node node, String name, File dir) throws IOException, CloudClient.RequestException {
+        return countFiles(node, name, dir, client.getNodeInfo(node));
+    }
+
+    private long countFiles(Node node, String name, File dir, CloudClient.NodeInfo info) throws IOException, CloudClient.RequestException {
         if (isCancelled()) return 0;
         waitResume();
-        CloudClient.NodeInfo info = client.getNodeInfo(node);
-        name = renameCopy(name, newName -> new File(dir, newName).exists());
-        File file = new File(dir, name);
+        // overlapping selections would otherwise download a node twice under one journal key
+        if (!visited.add(node)) return 0;
+        String target = journal.getTarget(node.toString());
+        File file;
+        if (target != null) file = new File(target);
+        else {
+            file = new File(dir, renameCopy(name, newName -> new File(dir, newName).exists()));
+            journal.putTarget(node.toString(), file.getAbsolutePath());
+        }
         if (info.type == NODE_TYPE_DIRECTORY) {
             file.mkdir();
             Holder<Long> size = new Holder<>(0L);
-            client.listDirectory(node, (childNode, childName) -> size.value += countFiles(childNode, childName, file));
+            client.listDirectoryInfo(node, (childNode, childName, childInfo) ->
+                    size.value += countFiles(childNode, childName, file, childInfo));
             return size.value;
         } else if (info.type == NODE_TYPE_FILE) {
-            files.add(new Pair<>(node, file));
+            RemoteFile remoteFile = new RemoteFile();
+            remoteFile.node = node;
+            remoteFile.key = node.toString();
+            remoteFile.file = file;
+            remoteFile.size = info.size;
+            files.add(remoteFile);
             return info.size;
         } else return 0;
     }
@@ -77,6 +272,13 @@ public class DownloadTask extends SimpleTaskBase {
     @Override
     public void cancel() {
         super.cancel();
-        client.close();
+        closeClients();
+    }
+
+    private static final class RemoteFile {
+        public Node node;
+        public String key;
+        public File file;
+        public long size;
     }
 }
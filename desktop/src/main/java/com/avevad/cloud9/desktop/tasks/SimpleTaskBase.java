@@ -1,27 +1,27 @@
 package com.avevad.cloud9.desktop.tasks;
 
 import com.avevad.cloud9.core.CloudClient;
+import com.avevad.cloud9.core.CloudClientPool;
 import com.avevad.cloud9.desktop.TasksPanel;
 
 import javax.swing.*;
 import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
 
 import static com.avevad.cloud9.desktop.DesktopCommon.*;
 
 public abstract class SimpleTaskBase implements TasksPanel.TaskController {
-    protected final CloudClient client;
+    private final CloudClientPool pool;
+    private final Set<CloudClient> clients = new HashSet<>();
+    protected volatile CloudClient client = null;
     private boolean suspended = false;
-    private boolean cancelled = false;
+    private volatile boolean cancelled = false;
     private final Object lock = new Object();
     protected TasksPanel.TaskCallback callback = null;
 
-    public SimpleTaskBase(CloudClient client) {
-        CloudClient newClient = null;
-        try {
-            newClient = new CloudClient(client);
-        } catch (IOException | CloudClient.InitException | CloudClient.ProtocolException | CloudClient.RequestException ignored) {
-        }
-        this.client = newClient;
+    public SimpleTaskBase(CloudClientPool pool) {
+        this.pool = pool;
     }
 
     public abstract void run() throws IOException, CloudClient.RequestException;
@@ -30,22 +30,65 @@ public abstract class SimpleTaskBase implements TasksPanel.TaskController {
         if (this.callback != null) throw new IllegalStateException("already started");
         this.callback = callback;
         return () -> {
-            if (client == null) {
-                SwingUtilities.invokeLater(() -> callback.setStatus(string(STRING_ERROR_TITLE)));
-            } else try {
+            try {
                 SwingUtilities.invokeLater(() -> callback.setStatus(string(STRING_PREPARING)));
+                client = acquireClient();
                 run();
-                client.disconnect();
+                releaseClient(client, true);
                 SwingUtilities.invokeLater(() -> callback.setStatus(string(cancelled ? STRING_CANCELLED : STRING_COMPLETED)));
             } catch (IOException e) {
+                if (client != null) releaseClient(client, false);
                 SwingUtilities.invokeLater(() -> callback.setStatus(string(STRING_CONNECTION_LOST, e.getLocalizedMessage())));
             } catch (CloudClient.RequestException e) {
+                if (client != null) releaseClient(client, false);
                 SwingUtilities.invokeLater(() -> callback.setStatus(string(STRING_REQUEST_ERROR, string(requestStatusString(e.status)))));
+            } catch (CloudClient.InitException | CloudClient.ProtocolException e) {
+                SwingUtilities.invokeLater(() -> callback.setStatus(string(STRING_ERROR_TITLE)));
             }
             SwingUtilities.invokeLater(callback::setFinished);
         };
     }
 
+    protected CloudClient acquireClient() throws IOException, CloudClient.InitException, CloudClient.ProtocolException, CloudClient.RequestException {
+        CloudClient client = pool.acquire();
+        synchronized (clients) {
+            clients.add(client);
+        }
+        if (cancelled) client.close();
+        return client;
+    }
+
+    protected void releaseClient(CloudClient client, boolean reusable) {
+        synchronized (clients) {
+            clients.remove(client);
+        }
+        if (reusable) pool.release(client);
+        else pool.discard(client);
+    }
+
+    protected CloudClient reconnect(CloudClient broken, int attempt) throws IOException, CloudClient.InitException, CloudClient.ProtocolException, CloudClient.RequestException {
+        boolean primary = client == broken;
+        if (primary) client = null;
+        releaseClient(broken, false);
+        long deadline = System.currentTimeMillis() + (TRANSFER_RETRY_DELAY << attempt);
+        long delay;
+        while (!cancelled && (delay = deadline - System.currentTimeMillis()) > 0) {
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException ignored) {
+            }
+        }
+        CloudClient fresh = acquireClient();
+        if (primary) client = fresh;
+        return fresh;
+    }
+
+    protected void closeClients() {
+        synchronized (clients) {
+            for (CloudClient client : clients) client.close();
+        }
+    }
+
     public void waitResume() {
         synchronized (lock) {
             if (suspended) SwingUtilities.invokeLater(() -> callback.setSuspended(true));
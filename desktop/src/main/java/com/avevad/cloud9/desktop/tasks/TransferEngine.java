@@ -0,0 +1,98 @@
+package com.avevad.cloud9.desktop.tasks;
+
+import com.avevad.cloud9.core.CloudClient;
+
+import java.io.IOException;
+import java.nio.file.FileSystemException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import static com.avevad.cloud9.desktop.DesktopCommon.TRANSFER_RETRIES;
+
+final class TransferEngine<T> {
+    private final SimpleTaskBase task;
+    private final int connections;
+    private final Queue<T> queue = new ConcurrentLinkedQueue<>();
+    private volatile Exception error = null;
+
+    public TransferEngine(SimpleTaskBase task, int connections) {
+        this.task = task;
+        this.connections = connections;
+    }
+
+    public void run(CloudClient primary, Collection<T> items, ItemHandler<T> handler) throws IOException, CloudClient.RequestException {
+        queue.addAll(items);
+        List<Thread> workers = new ArrayList<>();
+        for (int i = 1; i < Integer.min(connections, items.size()); i++) {
+            Thread worker = new Thread(() -> {
+                CloudClient client;
+                try {
+                    client = task.acquireClient();
+                } catch (IOException | CloudClient.InitException | CloudClient.ProtocolException | CloudClient.RequestException e) {
+                    return;
+                }
+                client = work(client, handler);
+                if (client != null) task.releaseClient(client, error == null);
+            }, "Transfer[" + i + "]");
+            worker.start();
+            workers.add(worker);
+        }
+        work(primary, handler);
+        for (Thread worker : workers) {
+            while (worker.isAlive()) {
+                try {
+                    worker.join();
+                } catch (InterruptedException ignored) {
+                }
+            }
+        }
+        Exception error = this.error;
+        if (error instanceof IOException) throw (IOException) error;
+        if (error instanceof CloudClient.RequestException) throw (CloudClient.RequestException) error;
+    }
+
+    private CloudClient work(CloudClient client, ItemHandler<T> handler) {
+        int failures = 0;
+        while (error == null && !task.isCancelled()) {
+            T item = queue.poll();
+            if (item == null) break;
+            task.waitResume();
+            try {
+                handler.handle(client, item);
+                failures = 0;
+            } catch (IOException e) {
+                if (task.isCancelled() || failures == TRANSFER_RETRIES || isLocal(e)) {
+                    fail(e);
+                    break;
+                }
+                queue.add(item);
+                try {
+                    client = task.reconnect(client, failures++);
+                } catch (IOException | CloudClient.InitException | CloudClient.ProtocolException | CloudClient.RequestException ignored) {
+                    fail(e);
+                    return null;
+                }
+            } catch (CloudClient.RequestException e) {
+                fail(e);
+                break;
+            }
+        }
+        return client;
+    }
+
+    private static boolean isLocal(IOException e) {
+        // only a failing connection is worth reconnecting for, a failing local file fails the same way again
+        return e instanceof CloudClient.LocalFileException || e instanceof FileSystemException;
+    }
+
+    private synchronized void fail(Exception e) {
+        if (error == null) error = e;
+    }
+
+    public interface ItemHandler<T> {
+        void handle(CloudClient client, T item) throws IOException, CloudClient.RequestException;
+    }
+}
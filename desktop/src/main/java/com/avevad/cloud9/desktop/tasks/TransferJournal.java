@@ -0,0 +1,179 @@
+package com.avevad.cloud9.desktop.tasks;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import static com.avevad.cloud9.desktop.DesktopCommon.*;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+/**
+ * Append-only on-disk record of a transfer task, kept until the task finishes so that a rerun can resume it.
+ * Remembers which target every source item was mapped to, how many bytes of each item were transferred
+ * and which items are complete. Offsets and completions are synced to disk before the call returns, while targets
+ * are only buffered until the next sync or {@link #flush()}; a torn record at the end of the file is dropped on replay.
+ */
+final class TransferJournal implements Closeable {
+    private static final byte RECORD_TARGET = 0;
+    private static final byte RECORD_OFFSET = 1;
+    private static final byte RECORD_COMPLETED = 2;
+
+    private final File file;
+    private final Map<String, String> targets = new HashMap<>();
+    private final Map<String, Long> offsets = new HashMap<>();
+    private final Set<String> completed = new HashSet<>();
+    private FileOutputStream stream = null;
+    private DataOutputStream out = null;
+    private boolean broken = false;
+
+    public TransferJournal(String task) {
+        String name = UUID.nameUUIDFromBytes(task.getBytes(StandardCharsets.UTF_8)) + JOURNAL_EXTENSION;
+        file = new File(new File(getHomeDir(), TRANSFERS_DIR), name);
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            while (true) {
+                byte kind = in.readByte();
+                String key = in.readUTF();
+                if (kind == RECORD_TARGET) targets.put(key, in.readUTF());
+                else if (kind == RECORD_OFFSET) offsets.put(key, in.readLong());
+                else if (kind == RECORD_COMPLETED) completed.add(key);
+                else break;
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
+    public synchronized String getTarget(String source) {
+        return targets.get(source);
+    }
+
+    public synchronized void putTarget(String source, String target) {
+        targets.put(source, target);
+        DataOutputStream out = open();
+        if (out == null) return;
+        try {
+            out.writeByte(RECORD_TARGET);
+            out.writeUTF(source);
+            out.writeUTF(target);
+        } catch (IOException e) {
+            fail();
+        }
+    }
+
+    public synchronized void flush() {
+        if (out == null) return;
+        try {
+            sync();
+        } catch (IOException e) {
+            fail();
+        }
+    }
+
+    public synchronized long getOffset(String item) {
+        return offsets.getOrDefault(item, 0L);
+    }
+
+    public synchronized void setOffset(String item, long offset) {
+        offsets.put(item, offset);
+        DataOutputStream out = open();
+        if (out == null) return;
+        try {
+            out.writeByte(RECORD_OFFSET);
+            out.writeUTF(item);
+            out.writeLong(offset);
+            sync();
+        } catch (IOException e) {
+            fail();
+        }
+    }
+
+    public synchronized boolean isCompleted(String item) {
+        return completed.contains(item);
+    }
+
+    public synchronized void complete(String item) {
+        completed.add(item);
+        DataOutputStream out = open();
+        if (out == null) return;
+        try {
+            out.writeByte(RECORD_COMPLETED);
+            out.writeUTF(item);
+            sync();
+        } catch (IOException e) {
+            fail();
+        }
+    }
+
+    public synchronized void delete() {
+        close();
+        file.delete();
+    }
+
+    @Override
+    public synchronized void close() {
+        if (out == null) return;
+        try {
+            out.close();
+        } catch (IOException ignored) {
+        }
+        out = null;
+        stream = null;
+    }
+
+    private DataOutputStream open() {
+        if (out != null || broken) return out;
+        File dir = file.getParentFile();
+        if (!dir.isDirectory()) dir.mkdirs();
+        File compacted = new File(dir, file.getName() + ".tmp");
+        try {
+            FileOutputStream stream = new FileOutputStream(compacted);
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(stream));
+            for (Map.Entry<String, String> target : targets.entrySet()) {
+                out.writeByte(RECORD_TARGET);
+                out.writeUTF(target.getKey());
+                out.writeUTF(target.getValue());
+            }
+            for (Map.Entry<String, Long> offset : offsets.entrySet()) {
+                out.writeByte(RECORD_OFFSET);
+                out.writeUTF(offset.getKey());
+                out.writeLong(offset.getValue());
+            }
+            for (String item : completed) {
+                out.writeByte(RECORD_COMPLETED);
+                out.writeUTF(item);
+            }
+            out.flush();
+            stream.getFD().sync();
+            out.close();
+            Files.move(compacted.toPath(), file.toPath(), REPLACE_EXISTING, ATOMIC_MOVE);
+            this.stream = new FileOutputStream(file, true);
+            this.out = new DataOutputStream(new BufferedOutputStream(this.stream));
+        } catch (IOException e) {
+            fail();
+        }
+        return out;
+    }
+
+    private void sync() throws IOException {
+        out.flush();
+        stream.getFD().sync();
+    }
+
+    private void fail() {
+        close();
+        broken = true;
+    }
+}
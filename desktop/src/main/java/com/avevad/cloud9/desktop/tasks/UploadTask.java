@@ -1,42 +1,72 @@
 package com.avevad.cloud9.desktop.tasks;
 
 import com.avevad.cloud9.core.CloudClient;
+import com.avevad.cloud9.core.CloudClientPool;
 import com.avevad.cloud9.core.CloudCommon.Node;
+import com.avevad.cloud9.core.MetadataCache;
 import com.avevad.cloud9.core.util.Holder;
 
 import javax.swing.*;
 import java.io.File;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
-import static com.avevad.cloud9.core.CloudCommon.FD_MODE_WRITE;
-import static com.avevad.cloud9.core.CloudCommon.NodeType;
+import static com.avevad.cloud9.core.CloudCommon.*;
 import static com.avevad.cloud9.desktop.DesktopCommon.*;
+import static java.nio.file.StandardOpenOption.READ;
 
 public class UploadTask extends SimpleTaskBase {
     private final File[] files;
     private final Node destination;
+    private final int connections;
+    private final List<PendingFile> pendingFiles = new ArrayList<>();
     private long sizeTotal = 0;
-    private long sizeDone = 0;
+    private final AtomicLong sizeDone = new AtomicLong();
+    private final Map<String, Long> counted = new ConcurrentHashMap<>();
     private int filesTotal = 0;
-    private int filesSent = 0;
-    byte[] buffer = new byte[BUFFER_SIZE];
+    private final AtomicInteger filesSent = new AtomicInteger();
+    private final ThreadLocal<ByteBuffer> buffers = ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(BUFFER_SIZE));
+    private TransferJournal journal = null;
 
-    public UploadTask(CloudClient client, File[] files, Node destination) {
-        super(client);
+    public UploadTask(CloudClientPool pool, File[] files, Node destination, int connections) {
+        super(pool);
         this.files = files;
         this.destination = destination;
+        this.connections = connections;
+    }
+
+    public UploadTask(CloudClientPool pool, File[] files, Node destination) {
+        this(pool, files, destination, TRANSFER_CONNECTIONS);
     }
 
     @Override
     public void cancel() {
         super.cancel();
-        client.close();
+        closeClients();
     }
 
     public void run() throws IOException, CloudClient.RequestException {
+        journal = new TransferJournal(journalKey());
+        try {
+            transfer();
+        } catch (IOException | CloudClient.RequestException e) {
+            journal.close();
+            throw e;
+        }
+        journal.delete();
+    }
+
+    private void transfer() throws IOException, CloudClient.RequestException {
         Holder<Integer> count = new Holder<>(0);
         for (File file : files) {
             sizeTotal += countFiles(file, count);
@@ -46,13 +76,29 @@ public class UploadTask extends SimpleTaskBase {
         updateStatus();
         try {
             for (File file : files) {
-                uploadFiles(file, destination, true);
+                prepareFiles(file, destination, true);
             }
+            journal.flush();
+            if (isCancelled()) return;
+            for (PendingFile pendingFile : pendingFiles) {
+                String key = pendingFile.file.getAbsolutePath();
+                if (journal.isCompleted(key)) continue;
+                counted.put(key, journal.getOffset(key));
+                sizeDone.addAndGet(journal.getOffset(key));
+            }
+            new TransferEngine<PendingFile>(this, connections).run(client, pendingFiles, this::upload);
         } catch (IOException e) {
             if (!isCancelled()) throw e;
         }
     }
 
+    String journalKey() {
+        List<String> sources = new ArrayList<>();
+        for (File file : files) sources.add(file.getAbsolutePath());
+        Collections.sort(sources);
+        return "upload:" + destination + ":" + String.join(",", sources);
+    }
+
     private long countFiles(File file, Holder<Integer> count) {
         if (isCancelled()) return 0;
         waitResume();
@@ -66,37 +112,125 @@ public class UploadTask extends SimpleTaskBase {
         } else return 0;
     }
 
-    private void uploadFiles(File file, Node parent, boolean first) throws IOException, CloudClient.RequestException {
+    private void prepareFiles(File file, Node parent, boolean first) throws IOException, CloudClient.RequestException {
         if (isCancelled()) return;
         waitResume();
         String name = file.getName();
-        if (first) {
+        String target = journal.getTarget(file.getAbsolutePath());
+        if (target != null && file.isDirectory() && !exists(Node.fromString(target))) target = null;
+        if (first && target == null) {
             Set<String> names = new HashSet<>();
             client.listDirectory(parent, (childNode, childName) -> names.add(childName));
             name = renameCopy(name, names::contains);
         }
         if (file.isDirectory()) {
-            Node dir = client.makeNode(parent, name, NodeType.DIRECTORY);
-            for (File child : file.listFiles()) uploadFiles(child, dir, false);
+            Node dir;
+            if (target != null) dir = Node.fromString(target);
+            else {
+                dir = client.makeNode(parent, name, NodeType.DIRECTORY);
+                journal.putTarget(file.getAbsolutePath(), dir.toString());
+            }
+            for (File child : file.listFiles()) prepareFiles(child, dir, false);
         } else if (file.isFile()) {
-            Node node = client.makeNode(parent, name, NodeType.FILE);
-            byte fd = client.openFD(node, FD_MODE_WRITE);
-            FileInputStream fis = new FileInputStream(file);
-            client.longWriteFD(fd, file.length(), buffer, 0, () -> updateProgress(fis.read(buffer, 0, BUFFER_SIZE)));
-            filesSent++;
+            PendingFile pendingFile = new PendingFile();
+            pendingFile.file = file;
+            pendingFile.parent = parent;
+            pendingFile.name = name;
+            pendingFiles.add(pendingFile);
+        }
+    }
+
+    private void upload(CloudClient client, PendingFile pendingFile) throws IOException, CloudClient.RequestException {
+        String key = pendingFile.file.getAbsolutePath();
+        if (journal.isCompleted(key)) {
+            updateProgress(pendingFile.file.length());
+            filesSent.incrementAndGet();
             updateStatus();
+            return;
+        }
+        try (FileChannel in = FileChannel.open(pendingFile.file.toPath(), READ)) {
+            long size = in.size();
+            String target = journal.getTarget(key);
+            Node node = null;
+            long done = 0;
+            if (target != null) {
+                node = Node.fromString(target);
+                MetadataCache cache = client.getMetadataCache();
+                if (cache != null) cache.invalidate(node);
+                try {
+                    long remote = client.getNodeInfo(node).size;
+                    if (remote > size) {
+                        // a remote file cannot be truncated, so one that outgrew the source is uploaded anew
+                        client.removeNode(node);
+                        node = null;
+                    } else done = Long.min(remote, journal.getOffset(key));
+                } catch (CloudClient.RequestException e) {
+                    if (e.status != REQUEST_ERR_NOT_FOUND) throw e;
+                    node = null;
+                }
+            }
+            if (node == null) {
+                node = client.makeNode(pendingFile.parent, pendingFile.name, NodeType.FILE);
+                journal.putTarget(key, node.toString());
+            }
+            byte fd = client.openFD(node, FD_MODE_WRITE);
+            if (done > 0 && !trySeek(client, fd, done)) done = 0;
+            updateProgress(done - counted.getOrDefault(key, 0L));
+            counted.put(key, done);
+            if (done != journal.getOffset(key)) journal.setOffset(key, done);
+            Holder<Long> position = new Holder<>(done);
+            Holder<Long> checkpoint = new Holder<>(done);
+            client.longWriteFD(fd, size - done, in, done, buffers.get(), sent -> {
+                position.value += sent;
+                counted.put(key, position.value);
+                if (position.value - checkpoint.value >= JOURNAL_CHECKPOINT_INTERVAL) {
+                    journal.setOffset(key, position.value);
+                    checkpoint.value = position.value;
+                }
+                updateProgress(sent);
+            });
             client.closeFD(fd);
         }
+        journal.complete(key);
+        filesSent.incrementAndGet();
+        updateStatus();
+    }
+
+    private boolean exists(Node node) throws IOException, CloudClient.RequestException {
+        MetadataCache cache = client.getMetadataCache();
+        if (cache != null) cache.invalidate(node);
+        try {
+            client.getNodeInfo(node);
+            return true;
+        } catch (CloudClient.RequestException e) {
+            if (e.status != REQUEST_ERR_NOT_FOUND) throw e;
+            return false;
+        }
     }
 
-    private int updateProgress(int sent) {
+    private static boolean trySeek(CloudClient client, byte fd, long offset) throws IOException, CloudClient.RequestException {
+        try {
+            client.seekFD(fd, offset);
+            return true;
+        } catch (CloudClient.RequestException e) {
+            if (e.status == REQUEST_ERR_INVALID_CMD || e.status == REQUEST_ERR_NOT_SUPPORTED) return false;
+            throw e;
+        }
+    }
+
+    private void updateProgress(long sent) {
+        long done = sizeDone.addAndGet(sent);
+        SwingUtilities.invokeLater(() -> callback.setProgress((double) done / sizeTotal));
         waitResume();
-        sizeDone += sent;
-        SwingUtilities.invokeLater(() -> callback.setProgress((double) sizeDone / sizeTotal));
-        return sent;
     }
 
     private void updateStatus() {
-        SwingUtilities.invokeLater(() -> callback.setStatus(string(STRING_UPLOADING, filesSent, filesTotal)));
+        SwingUtilities.invokeLater(() -> callback.setStatus(string(STRING_UPLOADING, filesSent.get(), filesTotal)));
+    }
+
+    private static final class PendingFile {
+        public File file;
+        public Node parent;
+        public String name;
     }
 }
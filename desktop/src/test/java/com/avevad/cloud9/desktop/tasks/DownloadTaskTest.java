@@ -0,0 +1,214 @@
+package com.avevad.cloud9.desktop.tasks;
+
+import com.avevad.cloud9.core.CloudClient;
+import com.avevad.cloud9.core.CloudClientPool;
+import com.avevad.cloud9.core.CloudCommon.Node;
+import com.avevad.cloud9.core.CloudCommon.NodeType;
+import com.avevad.cloud9.core.NIOConnection;
+import com.avevad.cloud9.core.util.Pair;
+import com.avevad.cloud9.desktop.DesktopCommon;
+import com.avevad.cloud9.desktop.TasksPanel;
+import com.avevad.cloud9.testserver.TestServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.DoubleConsumer;
+
+import static com.avevad.cloud9.core.CloudCommon.FD_MODE_WRITE;
+import static com.avevad.cloud9.desktop.DesktopCommon.*;
+import static java.nio.file.StandardOpenOption.READ;
+import static org.junit.Assert.*;
+
+public class DownloadTaskTest {
+    private String userHome;
+    private TestServer server;
+    private CloudClient client;
+    private CloudClientPool pool;
+    private Path destination;
+    private final List<String> statuses = new CopyOnWriteArrayList<>();
+
+    @Before
+    public void setUp() throws Exception {
+        System.setProperty("java.awt.headless", "true");
+        userHome = System.getProperty("user.home");
+        System.setProperty("user.home", Files.createTempDirectory("home").toString());
+        DesktopCommon.loadConfig();
+        server = new TestServer().start();
+        server.addUser("user", "password");
+        client = new CloudClient(new NIOConnection(server.getHost(), server.getPort()), "user", () -> "password");
+        client.setAutoReconnect(true);
+        pool = new CloudClientPool(client, TRANSFER_CONNECTIONS, 60_000);
+        destination = Files.createTempDirectory("download");
+    }
+
+    @After
+    public void tearDown() {
+        pool.close();
+        client.close();
+        server.close();
+        System.setProperty("user.home", userHome);
+    }
+
+    @Test
+    public void segmentedDownloadReassemblesTheFile() throws Exception {
+        byte[] data = randomData((int) SEGMENTED_DOWNLOAD_THRESHOLD + 12345, 1);
+        Node file = upload(client.getHome(), "file", data);
+        assertEquals(string(STRING_COMPLETED), run(download(file, TRANSFER_CONNECTIONS, 0), progress -> {
+        }));
+        assertArrayEquals(data, Files.readAllBytes(destination.resolve("file")));
+        assertNoJournals();
+    }
+
+    @Test
+    public void mappedDownloadSpansSeveralWindows() throws Exception {
+        byte[] data = randomData((int) (2 * MAPPED_WINDOW_SIZE) + 123, 2);
+        Node file = upload(client.getHome(), "file", data);
+        assertEquals(string(STRING_COMPLETED), run(download(file, 1, Long.MAX_VALUE), progress -> {
+        }));
+        assertArrayEquals(data, Files.readAllBytes(destination.resolve("file")));
+        assertNoJournals();
+    }
+
+    @Test
+    public void directoryDownloadMirrorsTheTree() throws Exception {
+        Node dir = client.makeNode(client.getHome(), "dir", NodeType.DIRECTORY);
+        Node nested = client.makeNode(dir, "nested", NodeType.DIRECTORY);
+        byte[][] data = new byte[4][];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = randomData(i * 100_000, i);
+            upload(i % 2 == 0 ? dir : nested, "file" + i, data[i]);
+        }
+        DownloadTask task = new DownloadTask(pool, Collections.singletonList(new Pair<>(dir, "dir")), destination.toFile());
+        assertEquals(string(STRING_COMPLETED), run(task, progress -> {
+        }));
+        for (int i = 0; i < data.length; i++) {
+            Path local = i % 2 == 0 ? destination.resolve("dir") : destination.resolve("dir").resolve("nested");
+            assertArrayEquals(data[i], Files.readAllBytes(local.resolve("file" + i)));
+        }
+        assertNoJournals();
+    }
+
+    @Test
+    public void overlappingSelectionDownloadsEveryNodeOnce() throws Exception {
+        Node dir = client.makeNode(client.getHome(), "dir", NodeType.DIRECTORY);
+        byte[] data = randomData(100_000, 4);
+        Node file = upload(dir, "file", data);
+        DownloadTask task = new DownloadTask(pool, Arrays.asList(new Pair<>(dir, "dir"), new Pair<>(file, "file")), destination.toFile());
+        assertEquals(string(STRING_COMPLETED), run(task, progress -> {
+        }));
+        assertArrayEquals(data, Files.readAllBytes(destination.resolve("dir").resolve("file")));
+        assertEquals(Collections.singletonList("dir"), Arrays.asList(destination.toFile().list()));
+        assertTrue(statuses.contains(string(STRING_DOWNLOADING, 1, 1)));
+        assertNoJournals();
+    }
+
+    @Test
+    public void droppedConnectionResumesFromCheckpoint() throws Exception {
+        byte[] data = randomData((int) (5 * JOURNAL_CHECKPOINT_INTERVAL), 3);
+        Node file = upload(client.getHome(), "file", data);
+        server.setBandwidth(data.length / 2);
+        DownloadTask task = download(file, 1, 0);
+        double checkpoint = (double) JOURNAL_CHECKPOINT_INTERVAL / data.length;
+        double[] lowest = {1};
+        boolean[] dropped = {false};
+        String status = run(task, progress -> {
+            if (dropped[0]) lowest[0] = Math.min(lowest[0], progress);
+            else if (progress > 1.5 * checkpoint) {
+                dropped[0] = true;
+                task.suspend();
+                new Thread(() -> {
+                    server.dropConnections();
+                    task.resume();
+                }).start();
+            }
+        });
+        assertEquals(string(STRING_COMPLETED), status);
+        assertTrue(dropped[0]);
+        assertTrue("restarted from " + lowest[0], lowest[0] >= checkpoint);
+        assertArrayEquals(data, Files.readAllBytes(destination.resolve("file")));
+        assertNoJournals();
+    }
+
+    @Test
+    public void localFailureIsNotRetried() throws Exception {
+        Node file = upload(client.getHome(), "file", randomData(1000, 5));
+        File blocked = Files.createTempFile("download", null).toFile();
+        DownloadTask task = new DownloadTask(pool, Collections.singletonList(new Pair<>(file, "file")), blocked);
+        long start = System.currentTimeMillis();
+        assertNotEquals(string(STRING_COMPLETED), run(task, progress -> {
+        }));
+        assertTrue(System.currentTimeMillis() - start < TRANSFER_RETRY_DELAY);
+    }
+
+    private DownloadTask download(Node file, int connections, long mappingLimit) {
+        return new DownloadTask(pool, Collections.singletonList(new Pair<>(file, "file")), destination.toFile(), connections, mappingLimit);
+    }
+
+    private String run(SimpleTaskBase task, DoubleConsumer progress) throws InterruptedException {
+        CountDownLatch finished = new CountDownLatch(1);
+        AtomicReference<String> status = new AtomicReference<>();
+        Thread thread = new Thread(task.start(new TasksPanel.TaskCallback() {
+            @Override
+            public void setStatus(String value) {
+                statuses.add(value);
+                status.set(value);
+            }
+
+            @Override
+            public void setProgress(double value) {
+                progress.accept(value);
+            }
+
+            @Override
+            public void setFinished() {
+                finished.countDown();
+            }
+
+            @Override
+            public void setSuspended(boolean suspended) {
+            }
+        }));
+        thread.start();
+        finished.await();
+        thread.join();
+        return status.get();
+    }
+
+    private Node upload(Node parent, String name, byte[] data) throws Exception {
+        Path source = Files.createTempFile("upload", null);
+        Files.write(source, data);
+        Node node = client.makeNode(parent, name, NodeType.FILE);
+        byte fd = client.openFD(node, FD_MODE_WRITE);
+        try (FileChannel in = FileChannel.open(source, READ)) {
+            client.longWriteFD(fd, data.length, in, 0, ByteBuffer.allocateDirect(BUFFER_SIZE), sent -> {
+            });
+        }
+        client.closeFD(fd);
+        Files.delete(source);
+        return node;
+    }
+
+    private static byte[] randomData(int size, long seed) {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    private static void assertNoJournals() {
+        String[] journals = new File(getHomeDir(), TRANSFERS_DIR).list();
+        assertTrue(journals == null || journals.length == 0);
+    }
+}
@@ -0,0 +1,99 @@
+package com.avevad.cloud9.desktop.tasks;
+
+import com.avevad.cloud9.desktop.DesktopCommon;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Files;
+
+import static org.junit.Assert.*;
+
+public class TransferJournalTest {
+    private String userHome;
+
+    @Before
+    public void setUp() throws Exception {
+        userHome = System.getProperty("user.home");
+        System.setProperty("user.home", Files.createTempDirectory("home").toString());
+    }
+
+    @After
+    public void tearDown() {
+        System.setProperty("user.home", userHome);
+    }
+
+    @Test
+    public void recordsSurviveReopening() {
+        TransferJournal journal = new TransferJournal("task");
+        journal.putTarget("source", "target");
+        journal.setOffset("item", 42);
+        journal.setOffset("item", 4242);
+        journal.complete("done");
+        journal.close();
+        TransferJournal reopened = new TransferJournal("task");
+        assertEquals("target", reopened.getTarget("source"));
+        assertEquals(4242, reopened.getOffset("item"));
+        assertTrue(reopened.isCompleted("done"));
+        assertFalse(reopened.isCompleted("item"));
+        assertEquals(0, reopened.getOffset("unknown"));
+        reopened.close();
+    }
+
+    @Test
+    public void targetsAreWrittenOnFlush() {
+        TransferJournal journal = new TransferJournal("task");
+        journal.setOffset("item", 42);
+        journal.putTarget("source", "target");
+        assertNull(new TransferJournal("task").getTarget("source"));
+        journal.flush();
+        assertEquals("target", new TransferJournal("task").getTarget("source"));
+        journal.putTarget("other", "target");
+        journal.complete("item");
+        assertEquals("target", new TransferJournal("task").getTarget("other"));
+        journal.close();
+    }
+
+    @Test
+    public void journalsOfDifferentTasksAreSeparate() {
+        TransferJournal journal = new TransferJournal("task");
+        journal.setOffset("item", 42);
+        journal.close();
+        assertEquals(0, new TransferJournal("other").getOffset("item"));
+    }
+
+    @Test
+    public void tornRecordIsDropped() throws Exception {
+        TransferJournal journal = new TransferJournal("task");
+        journal.setOffset("item", 42);
+        journal.close();
+        File file = journalFile();
+        try (FileOutputStream out = new FileOutputStream(file, true)) {
+            out.write(new byte[]{1, 0, 4, 'i', 't'});
+        }
+        TransferJournal reopened = new TransferJournal("task");
+        assertEquals(42, reopened.getOffset("item"));
+        reopened.setOffset("item", 43);
+        reopened.close();
+        assertEquals(43, new TransferJournal("task").getOffset("item"));
+    }
+
+    @Test
+    public void deleteRemovesTheJournal() {
+        TransferJournal journal = new TransferJournal("task");
+        journal.setOffset("item", 42);
+        assertNotNull(journalFile());
+        journal.delete();
+        assertNull(journalFile());
+        assertEquals(0, new TransferJournal("task").getOffset("item"));
+    }
+
+    private static File journalFile() {
+        File[] files = new File(DesktopCommon.getHomeDir(), DesktopCommon.TRANSFERS_DIR).listFiles();
+        if (files == null || files.length == 0) return null;
+        assertEquals(1, files.length);
+        return files[0];
+    }
+}
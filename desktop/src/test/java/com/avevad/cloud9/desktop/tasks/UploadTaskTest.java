@@ -0,0 +1,140 @@
+package com.avevad.cloud9.desktop.tasks;
+
+import com.avevad.cloud9.core.CloudClient;
+import com.avevad.cloud9.core.CloudClientPool;
+import com.avevad.cloud9.core.CloudCommon.Node;
+import com.avevad.cloud9.core.CloudCommon.NodeType;
+import com.avevad.cloud9.core.NIOConnection;
+import com.avevad.cloud9.core.util.Holder;
+import com.avevad.cloud9.desktop.DesktopCommon;
+import com.avevad.cloud9.desktop.TasksPanel;
+import com.avevad.cloud9.testserver.TestServer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static com.avevad.cloud9.core.CloudCommon.FD_MODE_READ;
+import static com.avevad.cloud9.core.CloudCommon.FD_MODE_WRITE;
+import static com.avevad.cloud9.desktop.DesktopCommon.*;
+import static org.junit.Assert.*;
+
+public class UploadTaskTest {
+    private String userHome;
+    private TestServer server;
+    private CloudClient client;
+    private CloudClientPool pool;
+    private Path source;
+
+    @Before
+    public void setUp() throws Exception {
+        System.setProperty("java.awt.headless", "true");
+        userHome = System.getProperty("user.home");
+        System.setProperty("user.home", Files.createTempDirectory("home").toString());
+        DesktopCommon.loadConfig();
+        server = new TestServer().start();
+        server.addUser("user", "password");
+        client = new CloudClient(new NIOConnection(server.getHost(), server.getPort()), "user", () -> "password");
+        pool = new CloudClientPool(client, TRANSFER_CONNECTIONS, 60_000);
+        source = Files.createTempDirectory("upload");
+    }
+
+    @After
+    public void tearDown() {
+        pool.close();
+        client.close();
+        server.close();
+        System.setProperty("user.home", userHome);
+    }
+
+    @Test
+    public void deletedDirectoryTargetIsRecreated() throws Exception {
+        File dir = Files.createDirectory(source.resolve("dir")).toFile();
+        byte[] data = randomData(1000, 1);
+        Files.write(dir.toPath().resolve("file"), data);
+        Node stale = client.makeNode(client.getHome(), "dir", NodeType.DIRECTORY);
+        client.removeNode(stale);
+        UploadTask task = new UploadTask(pool, new File[]{dir}, client.getHome());
+        TransferJournal journal = new TransferJournal(task.journalKey());
+        journal.putTarget(dir.getAbsolutePath(), stale.toString());
+        journal.close();
+        assertEquals(string(STRING_COMPLETED), run(task));
+        assertArrayEquals(data, read(child(child(client.getHome(), "dir"), "file")));
+    }
+
+    @Test
+    public void longerRemoteFileIsReplaced() throws Exception {
+        File file = source.resolve("file").toFile();
+        byte[] data = randomData(1000, 2);
+        Files.write(file.toPath(), data);
+        Node stale = client.makeNode(client.getHome(), "file", NodeType.FILE);
+        byte fd = client.openFD(stale, FD_MODE_WRITE);
+        byte[] longer = randomData(5000, 3);
+        client.writeFD(fd, longer, 0, longer.length);
+        client.closeFD(fd);
+        UploadTask task = new UploadTask(pool, new File[]{file}, client.getHome());
+        TransferJournal journal = new TransferJournal(task.journalKey());
+        journal.putTarget(file.getAbsolutePath(), stale.toString());
+        journal.setOffset(file.getAbsolutePath(), 500);
+        journal.close();
+        assertEquals(string(STRING_COMPLETED), run(task));
+        assertArrayEquals(data, read(child(client.getHome(), "file")));
+    }
+
+    private static String run(SimpleTaskBase task) throws InterruptedException {
+        CountDownLatch finished = new CountDownLatch(1);
+        AtomicReference<String> status = new AtomicReference<>();
+        Thread thread = new Thread(task.start(new TasksPanel.TaskCallback() {
+            @Override
+            public void setStatus(String value) {
+                status.set(value);
+            }
+
+            @Override
+            public void setProgress(double value) {
+            }
+
+            @Override
+            public void setFinished() {
+                finished.countDown();
+            }
+
+            @Override
+            public void setSuspended(boolean suspended) {
+            }
+        }));
+        thread.start();
+        finished.await();
+        thread.join();
+        return status.get();
+    }
+
+    private Node child(Node parent, String name) throws Exception {
+        Holder<Node> child = new Holder<>(null);
+        client.listDirectory(parent, (childNode, childName) -> {
+            if (childName.equals(name)) child.value = childNode;
+        });
+        assertNotNull(name, child.value);
+        return child.value;
+    }
+
+    private byte[] read(Node file) throws Exception {
+        byte[] data = new byte[(int) client.getNodeInfo(file).size];
+        byte fd = client.openFD(file, FD_MODE_READ);
+        for (int done = 0; done < data.length; ) done += client.readFD(fd, data, done, data.length - done);
+        client.closeFD(fd);
+        return data;
+    }
+
+    private static byte[] randomData(int size, long seed) {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+}
@@ -0,0 +1,163 @@
+package com.avevad.cloud9.testserver;
+
+import com.avevad.cloud9.core.CloudCommon.Node;
+import com.avevad.cloud9.core.util.NodeMap;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static com.avevad.cloud9.core.CloudCommon.*;
+
+public final class MemoryTree {
+    private final NodeMap<Entry> entries = new NodeMap<>();
+    private final Random random = new SecureRandom();
+
+    public synchronized Entry makeRoot(String owner) {
+        return add(null, "", NODE_TYPE_DIRECTORY, owner);
+    }
+
+    public synchronized Entry get(Node node) {
+        return entries.get(node);
+    }
+
+    public synchronized Node randomNode() {
+        return new Node(random.nextLong(), random.nextLong());
+    }
+
+    public synchronized short makeNode(Entry parent, String name, byte type, String owner, Entry[] result) {
+        short status = checkNewChild(parent, name);
+        if (status != REQUEST_OK) return status;
+        if (type != NODE_TYPE_FILE && type != NODE_TYPE_DIRECTORY) return REQUEST_ERR_INVALID_TYPE;
+        result[0] = add(parent, name, type, owner);
+        return REQUEST_OK;
+    }
+
+    public synchronized short removeNode(Entry entry) {
+        if (entry.parent == null) return REQUEST_ERR_FORBIDDEN;
+        if (!entry.children.isEmpty()) return REQUEST_ERR_DIRECTORY_IS_NOT_EMPTY;
+        if (entry.openCount > 0) return REQUEST_ERR_BUSY;
+        entry.parent.children.remove(entry.name);
+        entries.remove(entry.node);
+        return REQUEST_OK;
+    }
+
+    public synchronized short copyNode(Entry entry, String name, String owner, Entry[] result) {
+        if (entry.parent == null) return REQUEST_ERR_FORBIDDEN;
+        short status = checkNewChild(entry.parent, name);
+        if (status != REQUEST_OK) return status;
+        result[0] = copy(entry, entry.parent, name, owner);
+        return REQUEST_OK;
+    }
+
+    public synchronized short moveNode(Entry entry, Entry destination) {
+        if (entry.parent == null) return REQUEST_ERR_FORBIDDEN;
+        for (Entry cur = destination; cur != null; cur = cur.parent) if (cur == entry) return REQUEST_ERR_FORBIDDEN;
+        short status = checkNewChild(destination, entry.name);
+        if (status != REQUEST_OK) return status;
+        entry.parent.children.remove(entry.name);
+        entry.parent = destination;
+        destination.children.put(entry.name, entry);
+        return REQUEST_OK;
+    }
+
+    public synchronized short renameNode(Entry entry, String name) {
+        if (entry.parent == null) return REQUEST_ERR_FORBIDDEN;
+        if (name.equals(entry.name)) return REQUEST_OK;
+        short status = checkNewChild(entry.parent, name);
+        if (status != REQUEST_OK) return status;
+        entry.parent.children.remove(entry.name);
+        entry.name = name;
+        entry.parent.children.put(name, entry);
+        return REQUEST_OK;
+    }
+
+    public synchronized List<Entry> list(Entry entry) {
+        return new ArrayList<>(entry.children.values());
+    }
+
+    public synchronized int read(Entry entry, long position, byte[] buffer, int offset, int size) {
+        if (position >= entry.size) return 0;
+        int read = (int) Long.min(size, entry.size - position);
+        System.arraycopy(entry.data, (int) position, buffer, offset, read);
+        return read;
+    }
+
+    public synchronized void write(Entry entry, long position, byte[] buffer, int offset, int size) {
+        long end = position + size;
+        if (end > Integer.MAX_VALUE) throw new IllegalArgumentException("file is too large");
+        if (end > entry.data.length)
+            entry.data = Arrays.copyOf(entry.data, (int) Long.max(end, Long.min(entry.data.length * 2L, Integer.MAX_VALUE - 8)));
+        System.arraycopy(buffer, offset, entry.data, (int) position, size);
+        entry.size = Long.max(entry.size, end);
+    }
+
+    public synchronized Entry parent(Entry entry) {
+        return entry.parent;
+    }
+
+    public synchronized long size(Entry entry) {
+        return entry.size;
+    }
+
+    public synchronized void open(Entry entry) {
+        entry.openCount++;
+    }
+
+    public synchronized void close(Entry entry) {
+        entry.openCount--;
+    }
+
+    private short checkNewChild(Entry parent, String name) {
+        if (parent.type != NODE_TYPE_DIRECTORY) return REQUEST_ERR_NOT_A_DIRECTORY;
+        if (name.isEmpty() || name.indexOf(CLOUD_PATH_SEP) != -1 || name.equals(".") || name.equals(".."))
+            return REQUEST_ERR_INVALID_NAME;
+        if (parent.children.containsKey(name)) return REQUEST_ERR_EXISTS;
+        return REQUEST_OK;
+    }
+
+    private Entry add(Entry parent, String name, byte type, String owner) {
+        Node node;
+        do node = randomNode(); while (entries.containsKey(node));
+        Entry entry = new Entry(node, type, owner);
+        entry.name = name;
+        entry.parent = parent;
+        entry.group = owner;
+        entries.put(node, entry);
+        if (parent != null) parent.children.put(name, entry);
+        return entry;
+    }
+
+    private Entry copy(Entry source, Entry parent, String name, String owner) {
+        Entry entry = add(parent, name, source.type, owner);
+        entry.rights = source.rights;
+        entry.data = Arrays.copyOf(source.data, (int) source.size);
+        entry.size = source.size;
+        for (Entry child : new ArrayList<>(source.children.values())) copy(child, entry, child.name, owner);
+        return entry;
+    }
+
+    public static final class Entry {
+        public final Node node;
+        public final byte type;
+        public final String owner;
+        public volatile String name;
+        public volatile String group;
+        public volatile byte rights = 0;
+        private Entry parent;
+        private final Map<String, Entry> children = new LinkedHashMap<>();
+        private byte[] data = new byte[0];
+        private long size = 0;
+        private int openCount = 0;
+
+        private Entry(Node node, byte type, String owner) {
+            this.node = node;
+            this.type = type;
+            this.owner = owner;
+        }
+    }
+}
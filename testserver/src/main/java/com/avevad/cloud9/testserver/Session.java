@@ -0,0 +1,608 @@
+package com.avevad.cloud9.testserver;
+
+import com.avevad.cloud9.core.CloudCommon.Node;
+import com.avevad.cloud9.testserver.MemoryTree.Entry;
+import com.avevad.cloud9.testserver.TestServer.User;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.Inflater;
+import java.util.zip.InflaterInputStream;
+
+import static com.avevad.cloud9.core.CloudCommon.*;
+import static com.avevad.cloud9.core.CloudConnection.Helper.*;
+
+final class Session {
+    private static final int MAX_INIT_BODY_SIZE = 4096;
+    private static final int MAX_BODY_SIZE = 64 * 1024 * 1024;
+    private static final int MAX_READ_BLOCK = 16 * 1024 * 1024;
+    private static final int MAX_FDS = 64;
+    private static final int CHUNK_SIZE = 64 * 1024;
+    private static final int REQUEST_HEADER_SIZE = Integer.BYTES + Short.BYTES + Long.BYTES;
+    private static final int NODE_INFO_SIZE = 1 + Long.BYTES + 1;
+
+    private final TestServer server;
+    private final Socket socket;
+    private final long latency;
+    private final long capabilities;
+    private final TestServer.CapabilityExchange capabilityExchange;
+    private final Throttle inThrottle, outThrottle;
+    private final BlockingQueue<Outgoing> outgoing = new LinkedBlockingQueue<>();
+    private final OpenFile[] fds = new OpenFile[MAX_FDS];
+    private final Thread reader, writer;
+    private DataInputStream in;
+    private OutputStream out;
+    private User user;
+    private boolean compressed = false;
+
+    Session(TestServer server, Socket socket, long latency, long bandwidth, long capabilities, TestServer.CapabilityExchange capabilityExchange) {
+        this.server = server;
+        this.socket = socket;
+        this.latency = latency * 1_000_000;
+        this.capabilities = capabilities;
+        this.capabilityExchange = capabilityExchange;
+        inThrottle = new Throttle(bandwidth);
+        outThrottle = new Throttle(bandwidth);
+        reader = new Thread(this::readerRoutine, "TestServer-Reader");
+        writer = new Thread(this::writerRoutine, "TestServer-Writer");
+        reader.setDaemon(true);
+        writer.setDaemon(true);
+    }
+
+    void start() {
+        reader.start();
+    }
+
+    void close() {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    private void readerRoutine() {
+        try {
+            in = new DataInputStream(new BufferedInputStream(inThrottle.wrap(socket.getInputStream()), CHUNK_SIZE));
+            out = new BufferedOutputStream(outThrottle.wrap(socket.getOutputStream()), CHUNK_SIZE);
+            if (!negotiate() || !init()) return;
+            writer.start();
+            while (true) {
+                byte[] header = new byte[REQUEST_HEADER_SIZE];
+                in.readFully(header);
+                int id = bufRecvInt32(header, 0);
+                short cmd = bufRecvInt16(header, Integer.BYTES);
+                long size = bufRecvInt64(header, Integer.BYTES + Short.BYTES);
+                if (size < 0 || size > MAX_BODY_SIZE) {
+                    skip(size);
+                    respond(id, REQUEST_ERR_BODY_TOO_LARGE);
+                    continue;
+                }
+                byte[] body = new byte[(int) size];
+                in.readFully(body);
+                if (cmd == REQUEST_CMD_GOODBYE) {
+                    respond(id, REQUEST_OK);
+                    break;
+                }
+                try {
+                    handle(id, cmd, ByteBuffer.wrap(body));
+                } catch (BufferUnderflowException | IllegalArgumentException e) {
+                    respond(id, REQUEST_ERR_MALFORMED_CMD);
+                }
+            }
+        } catch (IOException ignored) {
+        } finally {
+            for (int fd = 0; fd < MAX_FDS; fd++) {
+                if (fds[fd] != null) server.tree.close(fds[fd].entry);
+                fds[fd] = null;
+            }
+            if (writer.isAlive()) outgoing.add(new Outgoing(0, null));
+            else close();
+            server.sessionClosed(this);
+        }
+    }
+
+    private void writerRoutine() {
+        try {
+            while (true) {
+                Outgoing item = outgoing.take();
+                if (item.action == null) break;
+                Throttle.sleepUntil(item.due);
+                item.action.write(out);
+                if (outgoing.isEmpty()) out.flush();
+            }
+            out.flush();
+        } catch (IOException | InterruptedException ignored) {
+        } finally {
+            close();
+        }
+    }
+
+    private boolean negotiate() throws IOException {
+        byte[] clientHeader = new byte[CLOUD_FULL_HEADER_LENGTH];
+        in.readFully(clientHeader);
+        byte[] serverHeader = new byte[CLOUD_FULL_HEADER_LENGTH];
+        System.arraycopy(CLOUD_HEADER, 0, serverHeader, 0, CLOUD_HEADER_LENGTH);
+        bufSendInt16(serverHeader, CLOUD_HEADER_LENGTH, CLOUD_RELEASE_CODE);
+        delay();
+        out.write(serverHeader);
+        out.flush();
+        for (int i = 0; i < CLOUD_FULL_HEADER_LENGTH; i++) if (clientHeader[i] != serverHeader[i]) return false;
+        return true;
+    }
+
+    private boolean init() throws IOException {
+        while (user == null) {
+            short cmd = in.readShort();
+            long size = in.readLong();
+            if (cmd == INIT_CMD_CAPABILITIES && capabilityExchange == TestServer.CapabilityExchange.DISCONNECTED) return false;
+            short status;
+            if (size < 0 || size > MAX_INIT_BODY_SIZE) {
+                skip(size);
+                status = INIT_ERR_BODY_TOO_LARGE;
+            } else {
+                byte[] body = new byte[(int) size];
+                in.readFully(body);
+                try {
+                    status = init(cmd, ByteBuffer.wrap(body));
+                } catch (BufferUnderflowException | IllegalArgumentException e) {
+                    status = INIT_ERR_MALFORMED_CMD;
+                }
+            }
+            delay();
+            out.write(status >> 8);
+            out.write(status);
+            if (cmd == INIT_CMD_CAPABILITIES && status == INIT_OK) {
+                byte[] reply = new byte[Long.BYTES];
+                bufSendInt64(reply, 0, capabilities);
+                out.write(reply);
+            }
+            out.flush();
+            if (status == INIT_ERR_AUTH_FAILED || status == INIT_ERR_INVALID_TOKEN) return false;
+            if (cmd == INIT_CMD_COMPRESS && status == INIT_OK) compress();
+        }
+        return true;
+    }
+
+    private short init(short cmd, ByteBuffer body) {
+        switch (cmd) {
+            case INIT_CMD_AUTH: {
+                String login = string(body, 0xFF & body.get());
+                String password = string(body, body.remaining());
+                user = server.authenticate(login, password);
+                return user == null ? INIT_ERR_AUTH_FAILED : INIT_OK;
+            }
+            case INIT_CMD_TOKEN: {
+                user = server.authenticate(node(body));
+                return user == null ? INIT_ERR_INVALID_TOKEN : INIT_OK;
+            }
+            case INIT_CMD_COMPRESS: {
+                if (compressed || !supports(CAPABILITY_COMPRESS_DEFLATE)) return INIT_ERR_INVALID_CMD;
+                return body.get() == COMPRESSION_DEFLATE ? INIT_OK : INIT_ERR_MALFORMED_CMD;
+            }
+            case INIT_CMD_CAPABILITIES: {
+                if (capabilityExchange == TestServer.CapabilityExchange.REJECTED) return INIT_ERR_INVALID_CMD;
+                body.getLong();
+                return INIT_OK;
+            }
+            default:
+                return INIT_ERR_INVALID_CMD;
+        }
+    }
+
+    private void compress() {
+        in = new DataInputStream(new InflaterInputStream(in, new Inflater(true), CHUNK_SIZE));
+        out = new DeflaterOutputStream(out, new Deflater(Deflater.BEST_SPEED, true), CHUNK_SIZE, true);
+        compressed = true;
+    }
+
+    private boolean supports(long capability) {
+        return (capabilities & capability) == capability;
+    }
+
+    private static long capability(short cmd) {
+        switch (cmd) {
+            case REQUEST_CMD_FD_SEEK:
+                return CAPABILITY_FD_SEEK;
+            case REQUEST_CMD_GET_NODE_INFO_BATCH:
+                return CAPABILITY_NODE_INFO_BATCH;
+            case REQUEST_CMD_LIST_DIRECTORY_INFO:
+                return CAPABILITY_LIST_DIRECTORY_INFO;
+            default:
+                return 0;
+        }
+    }
+
+    private void handle(int id, short cmd, ByteBuffer body) throws IOException {
+        if (!supports(capability(cmd))) {
+            respond(id, REQUEST_ERR_INVALID_CMD);
+            return;
+        }
+        MemoryTree tree = server.tree;
+        switch (cmd) {
+            case REQUEST_CMD_GET_HOME: {
+                String login = string(body, body.remaining());
+                User owner = login.isEmpty() ? user : server.getUser(login);
+                if (owner == null) respond(id, REQUEST_ERR_NOT_FOUND);
+                else respond(id, REQUEST_OK, nodeBody(owner.home.node));
+                break;
+            }
+            case REQUEST_CMD_LIST_DIRECTORY: {
+                Entry entry = tree.get(node(body));
+                if (entry == null) respond(id, REQUEST_ERR_NOT_FOUND);
+                else if (entry.type != NODE_TYPE_DIRECTORY) respond(id, REQUEST_ERR_NOT_A_DIRECTORY);
+                else {
+                    ByteArrayOutputStream result = new ByteArrayOutputStream();
+                    for (Entry child : tree.list(entry)) {
+                        result.write(nodeBody(child.node));
+                        byte[] name = child.name.getBytes(CLOUD_CHARSET);
+                        result.write(name.length);
+                        result.write(name);
+                    }
+                    respond(id, REQUEST_OK, result.toByteArray());
+                }
+                break;
+            }
+            case REQUEST_CMD_GET_PARENT: {
+                Entry entry = tree.get(node(body));
+                if (entry == null) respond(id, REQUEST_ERR_NOT_FOUND);
+                else {
+                    Entry parent = tree.parent(entry);
+                    respond(id, REQUEST_OK, parent == null ? new byte[0] : nodeBody(parent.node));
+                }
+                break;
+            }
+            case REQUEST_CMD_MAKE_NODE: {
+                Entry parent = tree.get(node(body));
+                String name = string(body, 0xFF & body.get());
+                byte type = body.get();
+                Entry[] result = new Entry[1];
+                short status = parent == null ? REQUEST_ERR_NOT_FOUND : tree.makeNode(parent, name, type, user.login, result);
+                respond(id, status, status == REQUEST_OK ? nodeBody(result[0].node) : new byte[0]);
+                break;
+            }
+            case REQUEST_CMD_GET_NODE_OWNER: {
+                Entry entry = tree.get(node(body));
+                if (entry == null) respond(id, REQUEST_ERR_NOT_FOUND);
+                else respond(id, REQUEST_OK, entry.owner.getBytes(CLOUD_CHARSET));
+                break;
+            }
+            case REQUEST_CMD_FD_OPEN: {
+                Entry entry = tree.get(node(body));
+                byte mode = body.get();
+                if (entry == null) respond(id, REQUEST_ERR_NOT_FOUND);
+                else if (entry.type != NODE_TYPE_FILE) respond(id, REQUEST_ERR_NOT_A_FILE);
+                else if (mode == 0 || (mode & ~(FD_MODE_READ | FD_MODE_WRITE)) != 0)
+                    respond(id, REQUEST_ERR_MALFORMED_CMD);
+                else {
+                    int fd = 0;
+                    while (fd < MAX_FDS && fds[fd] != null) fd++;
+                    if (fd == MAX_FDS) respond(id, REQUEST_ERR_TOO_MANY_FDS);
+                    else {
+                        fds[fd] = new OpenFile(entry, mode);
+                        tree.open(entry);
+                        respond(id, REQUEST_OK, new byte[]{(byte) fd});
+                    }
+                }
+                break;
+            }
+            case REQUEST_CMD_FD_CLOSE: {
+                int fd = 0xFF & body.get();
+                if (fd >= MAX_FDS || fds[fd] == null) respond(id, REQUEST_ERR_BAD_FD);
+                else {
+                    tree.close(fds[fd].entry);
+                    fds[fd] = null;
+                    respond(id, REQUEST_OK);
+                }
+                break;
+            }
+            case REQUEST_CMD_FD_READ: {
+                OpenFile file = fd(body.get(), FD_MODE_READ);
+                int size = body.getInt();
+                if (file == null) respond(id, REQUEST_ERR_BAD_FD);
+                else if (size < 0 || size > MAX_READ_BLOCK) respond(id, REQUEST_ERR_READ_BLOCK_IS_TOO_LARGE);
+                else {
+                    byte[] data = new byte[size];
+                    int read = tree.read(file.entry, file.position, data, 0, size);
+                    if (read == 0 && size > 0) respond(id, REQUEST_ERR_END_OF_FILE);
+                    else {
+                        file.position += read;
+                        respond(id, REQUEST_OK, data, read);
+                    }
+                }
+                break;
+            }
+            case REQUEST_CMD_FD_WRITE: {
+                OpenFile file = fd(body.get(), FD_MODE_WRITE);
+                if (file == null) respond(id, REQUEST_ERR_BAD_FD);
+                else {
+                    int size = body.remaining();
+                    tree.write(file.entry, file.position, body.array(), body.position(), size);
+                    file.position += size;
+                    respond(id, REQUEST_OK);
+                }
+                break;
+            }
+            case REQUEST_CMD_FD_SEEK: {
+                OpenFile file = fd(body.get(), (byte) 0);
+                long offset = body.getLong();
+                if (file == null) respond(id, REQUEST_ERR_BAD_FD);
+                else if (offset < 0 || offset > tree.size(file.entry)) respond(id, REQUEST_ERR_END_OF_FILE);
+                else {
+                    file.position = offset;
+                    respond(id, REQUEST_OK);
+                }
+                break;
+            }
+            case REQUEST_CMD_FD_READ_LONG: {
+                OpenFile file = fd(body.get(), FD_MODE_READ);
+                long size = body.getLong();
+                if (file == null) respond(id, REQUEST_ERR_BAD_FD);
+                else if (size < 0 || size > tree.size(file.entry) - file.position) respond(id, REQUEST_ERR_END_OF_FILE);
+                else {
+                    long position = file.position;
+                    file.position += size;
+                    respond(id, REQUEST_SWITCH_OK);
+                    send(output -> streamFile(output, file.entry, position, size));
+                }
+                break;
+            }
+            case REQUEST_CMD_FD_WRITE_LONG: {
+                OpenFile file = fd(body.get(), FD_MODE_WRITE);
+                long size = body.getLong();
+                if (file == null) respond(id, REQUEST_ERR_BAD_FD);
+                else if (size < 0 || file.position + size > Integer.MAX_VALUE) respond(id, REQUEST_ERR_BODY_TOO_LARGE);
+                else {
+                    respond(id, REQUEST_SWITCH_OK);
+                    byte[] chunk = new byte[CHUNK_SIZE];
+                    long done = 0;
+                    while (done < size) {
+                        int read = (int) Long.min(CHUNK_SIZE, size - done);
+                        in.readFully(chunk, 0, read);
+                        tree.write(file.entry, file.position, chunk, 0, read);
+                        file.position += read;
+                        done += read;
+                    }
+                }
+                break;
+            }
+            case REQUEST_CMD_GET_NODE_INFO: {
+                Entry entry = tree.get(node(body));
+                if (entry == null) respond(id, REQUEST_ERR_NOT_FOUND);
+                else {
+                    byte[] info = new byte[NODE_INFO_SIZE];
+                    putInfo(info, 0, entry);
+                    respond(id, REQUEST_OK, info);
+                }
+                break;
+            }
+            case REQUEST_CMD_GET_NODE_INFO_BATCH: {
+                if (body.remaining() % NODE_ID_SIZE != 0) throw new IllegalArgumentException();
+                ByteArrayOutputStream result = new ByteArrayOutputStream();
+                while (body.hasRemaining()) {
+                    Entry entry = tree.get(node(body));
+                    byte[] record = new byte[Short.BYTES + NODE_INFO_SIZE];
+                    if (entry == null) bufSendInt16(record, 0, REQUEST_ERR_NOT_FOUND);
+                    else putInfo(record, Short.BYTES, entry);
+                    result.write(record);
+                }
+                respond(id, REQUEST_OK, result.toByteArray());
+                break;
+            }
+            case REQUEST_CMD_LIST_DIRECTORY_INFO: {
+                Entry entry = tree.get(node(body));
+                if (entry == null) respond(id, REQUEST_ERR_NOT_FOUND);
+                else if (entry.type != NODE_TYPE_DIRECTORY) respond(id, REQUEST_ERR_NOT_A_DIRECTORY);
+                else {
+                    ByteArrayOutputStream result = new ByteArrayOutputStream();
+                    byte[] info = new byte[NODE_INFO_SIZE];
+                    for (Entry child : tree.list(entry)) {
+                        result.write(nodeBody(child.node));
+                        putInfo(info, 0, child);
+                        result.write(info);
+                        byte[] name = child.name.getBytes(CLOUD_CHARSET);
+                        result.write(name.length);
+                        result.write(name);
+                    }
+                    respond(id, REQUEST_OK, result.toByteArray());
+                }
+                break;
+            }
+            case REQUEST_CMD_SET_NODE_RIGHTS: {
+                Entry entry = tree.get(node(body));
+                byte rights = body.get();
+                if (entry == null) respond(id, REQUEST_ERR_NOT_FOUND);
+                else if (!entry.owner.equals(user.login)) respond(id, REQUEST_ERR_FORBIDDEN);
+                else {
+                    entry.rights = rights;
+                    respond(id, REQUEST_OK);
+                }
+                break;
+            }
+            case REQUEST_CMD_GET_NODE_GROUP: {
+                Entry entry = tree.get(node(body));
+                if (entry == null) respond(id, REQUEST_ERR_NOT_FOUND);
+                else respond(id, REQUEST_OK, entry.group.getBytes(CLOUD_CHARSET));
+                break;
+            }
+            case REQUEST_CMD_SET_NODE_GROUP: {
+                Entry entry = tree.get(node(body));
+                String group = string(body, body.remaining());
+                if (entry == null || server.getUser(group) == null) respond(id, REQUEST_ERR_NOT_FOUND);
+                else if (!entry.owner.equals(user.login)) respond(id, REQUEST_ERR_FORBIDDEN);
+                else {
+                    entry.group = group;
+                    respond(id, REQUEST_OK);
+                }
+                break;
+            }
+            case REQUEST_CMD_GROUP_INVITE:
+            case REQUEST_CMD_GROUP_KICK: {
+                String login = string(body, body.remaining());
+                boolean changed;
+                synchronized (user.group) {
+                    if (cmd == REQUEST_CMD_GROUP_INVITE) changed = server.getUser(login) != null && user.group.add(login);
+                    else changed = user.group.remove(login);
+                }
+                if (changed) respond(id, REQUEST_OK);
+                else respond(id, server.getUser(login) == null ? REQUEST_ERR_NOT_FOUND : REQUEST_ERR_EXISTS);
+                break;
+            }
+            case REQUEST_CMD_GROUP_LIST: {
+                ByteArrayOutputStream result = new ByteArrayOutputStream();
+                synchronized (user.group) {
+                    for (String member : user.group) {
+                        byte[] name = member.getBytes(CLOUD_CHARSET);
+                        result.write(name.length);
+                        result.write(name);
+                    }
+                }
+                respond(id, REQUEST_OK, result.toByteArray());
+                break;
+            }
+            case REQUEST_CMD_REMOVE_NODE: {
+                Entry entry = tree.get(node(body));
+                respond(id, entry == null ? REQUEST_ERR_NOT_FOUND : tree.removeNode(entry));
+                break;
+            }
+            case REQUEST_CMD_COPY_NODE: {
+                Entry entry = tree.get(node(body));
+                String name = string(body, body.remaining());
+                Entry[] result = new Entry[1];
+                short status = entry == null ? REQUEST_ERR_NOT_FOUND : tree.copyNode(entry, name, user.login, result);
+                respond(id, status, status == REQUEST_OK ? nodeBody(result[0].node) : new byte[0]);
+                break;
+            }
+            case REQUEST_CMD_MOVE_NODE: {
+                Entry entry = tree.get(node(body));
+                Entry destination = tree.get(node(body));
+                if (entry == null || destination == null) respond(id, REQUEST_ERR_NOT_FOUND);
+                else respond(id, tree.moveNode(entry, destination));
+                break;
+            }
+            case REQUEST_CMD_RENAME_NODE: {
+                Entry entry = tree.get(node(body));
+                String name = string(body, body.remaining());
+                respond(id, entry == null ? REQUEST_ERR_NOT_FOUND : tree.renameNode(entry, name));
+                break;
+            }
+            case REQUEST_CMD_GET_TOKEN: {
+                respond(id, REQUEST_OK, nodeBody(server.makeToken(user)));
+                break;
+            }
+            default:
+                respond(id, REQUEST_ERR_INVALID_CMD);
+        }
+    }
+
+    private void putInfo(byte[] buffer, int offset, Entry entry) {
+        buffer[offset] = entry.type;
+        bufSendInt64(buffer, offset + 1, server.tree.size(entry));
+        buffer[offset + 1 + Long.BYTES] = entry.rights;
+    }
+
+    private OpenFile fd(byte fd, byte mode) {
+        int index = 0xFF & fd;
+        if (index >= MAX_FDS || fds[index] == null || (fds[index].mode & mode) != mode) return null;
+        return fds[index];
+    }
+
+    private void streamFile(OutputStream output, Entry entry, long position, long size) throws IOException {
+        byte[] chunk = new byte[CHUNK_SIZE];
+        long done = 0;
+        while (done < size) {
+            int read = server.tree.read(entry, position + done, chunk, 0, (int) Long.min(CHUNK_SIZE, size - done));
+            if (read == 0) read = (int) Long.min(CHUNK_SIZE, size - done);
+            output.write(chunk, 0, read);
+            done += read;
+        }
+    }
+
+    private void respond(int id, short status) {
+        respond(id, status, new byte[0]);
+    }
+
+    private void respond(int id, short status, byte[] body) {
+        respond(id, status, body, body.length);
+    }
+
+    private void respond(int id, short status, byte[] body, int size) {
+        byte[] frame = new byte[REQUEST_HEADER_SIZE + size];
+        bufSendInt32(frame, 0, id);
+        bufSendInt16(frame, Integer.BYTES, status);
+        bufSendInt64(frame, Integer.BYTES + Short.BYTES, size);
+        System.arraycopy(body, 0, frame, REQUEST_HEADER_SIZE, size);
+        send(output -> output.write(frame));
+    }
+
+    private void send(Action action) {
+        outgoing.add(new Outgoing(System.nanoTime() + latency, action));
+    }
+
+    private void delay() {
+        Throttle.sleepUntil(System.nanoTime() + latency);
+    }
+
+    private void skip(long size) throws IOException {
+        while (size > 0) {
+            long skipped = in.skip(size);
+            if (skipped <= 0) {
+                in.readByte();
+                skipped = 1;
+            }
+            size -= skipped;
+        }
+    }
+
+    private static Node node(ByteBuffer body) {
+        return new Node(body.getLong(), body.getLong());
+    }
+
+    private static byte[] nodeBody(Node node) {
+        byte[] body = new byte[NODE_ID_SIZE];
+        node.bufSendNode(body, 0);
+        return body;
+    }
+
+    private static String string(ByteBuffer body, int size) {
+        if (size > body.remaining()) throw new BufferUnderflowException();
+        String s = bufRecvString(body.array(), body.position(), size);
+        body.position(body.position() + size);
+        return s;
+    }
+
+    private interface Action {
+        void write(OutputStream output) throws IOException;
+    }
+
+    private static final class Outgoing {
+        public final long due;
+        public final Action action;
+
+        public Outgoing(long due, Action action) {
+            this.due = due;
+            this.action = action;
+        }
+    }
+
+    private static final class OpenFile {
+        public final Entry entry;
+        public final byte mode;
+        public long position = 0;
+
+        public OpenFile(Entry entry, byte mode) {
+            this.entry = entry;
+            this.mode = mode;
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package com.avevad.cloud9.testserver;
+
+import com.avevad.cloud9.core.CloudCommon.Node;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static com.avevad.cloud9.core.CloudCommon.CLOUD_CAPABILITIES;
+import static com.avevad.cloud9.core.CloudCommon.CLOUD_DEFAULT_PORT;
+
+/**
+ * In-memory stand-in for a Cloud9 server, meant for tests and benchmarks.
+ * Every connection is served by its own threads, responses can be delayed by a fixed latency
+ * and both directions of a connection can be capped to a given bandwidth.
+ */
+public final class TestServer implements Closeable {
+    public final MemoryTree tree = new MemoryTree();
+    private final ServerSocket serverSocket;
+    private final Map<String, User> users = new ConcurrentHashMap<>();
+    private final Map<Node, User> tokens = new ConcurrentHashMap<>();
+    private final Set<Session> sessions = ConcurrentHashMap.newKeySet();
+    private final Thread acceptor = new Thread(this::acceptorRoutine, "TestServer");
+    private volatile long latency = 0;
+    private volatile long bandwidth = 0;
+    private volatile long capabilities = CLOUD_CAPABILITIES;
+    private volatile CapabilityExchange capabilityExchange = CapabilityExchange.SUPPORTED;
+
+    public TestServer(InetAddress address, int port) throws IOException {
+        serverSocket = new ServerSocket(port, 50, address);
+        acceptor.setDaemon(true);
+    }
+
+    public TestServer() throws IOException {
+        this(InetAddress.getLoopbackAddress(), 0);
+    }
+
+    public TestServer start() {
+        acceptor.start();
+        return this;
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    public String getHost() {
+        return serverSocket.getInetAddress().getHostAddress();
+    }
+
+    public User addUser(String login, String password) {
+        User user = new User(login, password, tree.makeRoot(login));
+        if (users.putIfAbsent(login, user) != null) throw new IllegalArgumentException("user exists: " + login);
+        return user;
+    }
+
+    public User getUser(String login) {
+        return users.get(login);
+    }
+
+    public long getLatency() {
+        return latency;
+    }
+
+    public void setLatency(long latency) {
+        this.latency = latency;
+    }
+
+    public long getBandwidth() {
+        return bandwidth;
+    }
+
+    public void setBandwidth(long bandwidth) {
+        this.bandwidth = bandwidth;
+    }
+
+    public long getCapabilities() {
+        return capabilities;
+    }
+
+    public void setCapabilities(long capabilities) {
+        this.capabilities = capabilities;
+    }
+
+    public CapabilityExchange getCapabilityExchange() {
+        return capabilityExchange;
+    }
+
+    public void setCapabilityExchange(CapabilityExchange capabilityExchange) {
+        this.capabilityExchange = capabilityExchange;
+    }
+
+    User authenticate(String login, String password) {
+        User user = users.get(login);
+        return user != null && user.password.equals(password) ? user : null;
+    }
+
+    User authenticate(Node token) {
+        return tokens.get(token);
+    }
+
+    Node makeToken(User user) {
+        Node token = tree.randomNode();
+        tokens.put(token, user);
+        return token;
+    }
+
+    void sessionClosed(Session session) {
+        sessions.remove(session);
+    }
+
+    private void acceptorRoutine() {
+        try {
+            while (true) {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                Session session = new Session(this, socket, latency, bandwidth, capabilities, capabilityExchange);
+                sessions.add(session);
+                session.start();
+            }
+        } catch (IOException ignored) {
+        }
+    }
+
+    /**
+     * Closes every open connection as if the network went down, the server keeps accepting new ones.
+     */
+    public void dropConnections() {
+        for (Session session : sessions) session.close();
+    }
+
+    @Override
+    public void close() {
+        try {
+            serverSocket.close();
+        } catch (IOException ignored) {
+        }
+        dropConnections();
+    }
+
+    public static final class User {
+        public final String login;
+        private final String password;
+        public final MemoryTree.Entry home;
+        final Set<String> group = new LinkedHashSet<>();
+
+        private User(String login, String password, MemoryTree.Entry home) {
+            this.login = login;
+            this.password = password;
+            this.home = home;
+        }
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = CLOUD_DEFAULT_PORT;
+        long latency = 0, bandwidth = 0;
+        Set<String> credentials = new LinkedHashSet<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-p":
+                    port = Integer.parseInt(args[++i]);
+                    break;
+                case "-l":
+                    latency = Long.parseLong(args[++i]);
+                    break;
+                case "-b":
+                    bandwidth = Long.parseLong(args[++i]);
+                    break;
+                default:
+                    if (args[i].indexOf(':') == -1) {
+                        System.err.println("usage: TestServer [-p port] [-l latency ms] [-b bytes per second] login:password...");
+                        System.exit(1);
+                    }
+                    credentials.add(args[i]);
+            }
+        }
+        TestServer server = new TestServer(null, port);
+        server.setLatency(latency);
+        server.setBandwidth(bandwidth);
+        for (String credential : credentials) {
+            int sep = credential.indexOf(':');
+            server.addUser(credential.substring(0, sep), credential.substring(sep + 1));
+        }
+        server.acceptor.setDaemon(false);
+        server.start();
+        System.out.println("Listening on port " + server.getPort());
+    }
+
+    /**
+     * How sessions answer the capability exchange, servers predating it either reject it or hang up.
+     */
+    public enum CapabilityExchange {
+        SUPPORTED, REJECTED, DISCONNECTED
+    }
+}
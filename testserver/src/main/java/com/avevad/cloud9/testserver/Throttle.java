@@ -0,0 +1,70 @@
+package com.avevad.cloud9.testserver;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+final class Throttle {
+    private static final long SLACK = 1_000_000;
+
+    private final long bytesPerSecond;
+    private long next = System.nanoTime();
+
+    Throttle(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    synchronized void acquire(long bytes) {
+        if (bytesPerSecond <= 0) return;
+        long now = System.nanoTime();
+        if (next < now) next = now;
+        next += bytes * 1_000_000_000L / bytesPerSecond;
+        if (next - now > SLACK) sleepUntil(next);
+    }
+
+    InputStream wrap(InputStream in) {
+        return new FilterInputStream(in) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b != -1) acquire(1);
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int read = super.read(b, off, len);
+                if (read > 0) acquire(read);
+                return read;
+            }
+        };
+    }
+
+    OutputStream wrap(OutputStream out) {
+        return new FilterOutputStream(out) {
+            @Override
+            public void write(int b) throws IOException {
+                acquire(1);
+                out.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                acquire(len);
+                out.write(b, off, len);
+            }
+        };
+    }
+
+    static void sleepUntil(long deadline) {
+        long delay;
+        while ((delay = deadline - System.nanoTime()) > 0) {
+            try {
+                Thread.sleep(delay / 1_000_000, (int) (delay % 1_000_000));
+            } catch (InterruptedException ignored) {
+            }
+        }
+    }
+}
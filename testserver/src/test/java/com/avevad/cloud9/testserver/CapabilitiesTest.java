@@ -0,0 +1,81 @@
+package com.avevad.cloud9.testserver;
+
+import com.avevad.cloud9.core.CloudClient;
+import com.avevad.cloud9.core.CloudClient.DirectoryEntryInfo;
+import com.avevad.cloud9.core.CloudClient.NodeInfo;
+import com.avevad.cloud9.core.CloudCommon.Node;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static com.avevad.cloud9.core.CloudCommon.*;
+import static org.junit.Assert.*;
+
+public class CapabilitiesTest extends ServerTestBase {
+    @Test
+    public void advertisedCapabilitiesAreAdopted() throws Exception {
+        server.setCapabilities(CAPABILITY_FD_SEEK | CAPABILITY_COMPRESS_DEFLATE);
+        CloudClient client = connect(true);
+        assertEquals(CAPABILITY_FD_SEEK | CAPABILITY_COMPRESS_DEFLATE, client.getCapabilities());
+        assertTrue(client.isCompressed());
+        assertFallbacksWork(client);
+    }
+
+    @Test
+    public void compressionIsSkippedWhenNotAdvertised() throws Exception {
+        server.setCapabilities(CLOUD_CAPABILITIES & ~CAPABILITY_COMPRESS_DEFLATE);
+        CloudClient client = connect(true);
+        assertFalse(client.isCompressed());
+        assertFalse(client.hasCapability(CAPABILITY_COMPRESS_DEFLATE));
+        assertFallbacksWork(client);
+    }
+
+    @Test
+    public void rejectedExchangeFallsBackToProbing() throws Exception {
+        server.setCapabilityExchange(TestServer.CapabilityExchange.REJECTED);
+        assertLegacyServerWorks();
+    }
+
+    @Test
+    public void hangUpOnExchangeFallsBackToProbing() throws Exception {
+        server.setCapabilityExchange(TestServer.CapabilityExchange.DISCONNECTED);
+        assertLegacyServerWorks();
+    }
+
+    @Test
+    public void legacyServerWithoutBatchCommandsIsProbed() throws Exception {
+        server.setCapabilityExchange(TestServer.CapabilityExchange.REJECTED);
+        server.setCapabilities(CAPABILITY_FD_SEEK);
+        assertLegacyServerWorks();
+    }
+
+    private void assertLegacyServerWorks() throws Exception {
+        CloudClient client = connect(true);
+        assertEquals(0, client.getCapabilities());
+        assertFalse(client.isCompressed());
+        assertFallbacksWork(client);
+        CloudClient clone = clone(client);
+        assertEquals(0, clone.getCapabilities());
+        assertFalse(clone.isCompressed());
+        assertFallbacksWork(clone);
+    }
+
+    private void assertFallbacksWork(CloudClient client) throws Exception {
+        Node home = client.getHome();
+        byte[] data = randomData(100_000, 5);
+        Node file = upload(client, home, "file" + System.nanoTime(), data);
+        List<NodeInfo> batch = client.getNodeInfo(Arrays.asList(home, file));
+        assertEquals(NODE_TYPE_DIRECTORY, batch.get(0).type);
+        assertEquals(data.length, batch.get(1).size);
+        for (DirectoryEntryInfo entry : client.listDirectoryInfoAsync(home).get()) {
+            assertEquals(client.getNodeInfo(entry.node).size, entry.info.size);
+        }
+        byte fd = client.openFD(file, FD_MODE_READ);
+        client.seekFD(fd, 1000);
+        byte[] buffer = new byte[100];
+        assertEquals(buffer.length, client.readFD(fd, buffer, 0, buffer.length));
+        assertArrayEquals(Arrays.copyOfRange(data, 1000, 1100), buffer);
+        client.closeFD(fd);
+    }
+}
@@ -0,0 +1,68 @@
+package com.avevad.cloud9.testserver;
+
+import com.avevad.cloud9.core.CloudClient;
+import com.avevad.cloud9.core.CloudClientPool;
+import com.avevad.cloud9.core.MetadataCache;
+import org.junit.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public class CloudClientPoolTest extends ServerTestBase {
+    private static final long LATENCY = 200;
+
+    @Test
+    public void idleClientIsReused() throws Exception {
+        CloudClientPool pool = new CloudClientPool(connect(), 2, 60_000);
+        CloudClient client = pool.acquire();
+        pool.release(client);
+        assertSame(client, pool.acquire());
+        pool.close();
+    }
+
+    @Test
+    public void closedClientIsNotReused() throws Exception {
+        CloudClientPool pool = new CloudClientPool(connect(), 2, 60_000);
+        CloudClient client = pool.acquire();
+        pool.release(client);
+        client.close();
+        CloudClient fresh = pool.acquire();
+        assertNotSame(client, fresh);
+        assertNotNull(fresh.getHome());
+        pool.close();
+    }
+
+    @Test
+    public void healthCheckBypassesTheMetadataCache() throws Exception {
+        server.setLatency(LATENCY);
+        CloudClient origin = connect();
+        origin.setMetadataCache(new MetadataCache(1024, 60_000));
+        CloudClientPool pool = new CloudClientPool(origin, 2, 60_000, 0);
+        CloudClient client = pool.acquire();
+        client.getHome();
+        pool.release(client);
+        long start = System.nanoTime();
+        assertSame(client, pool.acquire());
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= LATENCY);
+        pool.close();
+    }
+
+    @Test
+    public void droppedClientIsReplaced() throws Exception {
+        CloudClient origin = connect();
+        origin.setAutoReconnect(true);
+        origin.setMetadataCache(new MetadataCache(1024, 60_000));
+        origin.getHome();
+        CloudClientPool pool = new CloudClientPool(origin, 2, 60_000, 0);
+        CloudClient client = pool.acquire();
+        client.setAutoReconnect(false);
+        client.getHome();
+        pool.release(client);
+        server.dropConnections();
+        CloudClient fresh = pool.acquire();
+        assertNotSame(client, fresh);
+        assertEquals(origin.getHome(), fresh.getHome());
+        pool.close();
+    }
+}
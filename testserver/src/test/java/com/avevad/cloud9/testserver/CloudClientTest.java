@@ -0,0 +1,185 @@
+package com.avevad.cloud9.testserver;
+
+import com.avevad.cloud9.core.CloudClient;
+import com.avevad.cloud9.core.CloudClient.DirectoryEntry;
+import com.avevad.cloud9.core.CloudClient.DirectoryEntryInfo;
+import com.avevad.cloud9.core.CloudClient.NodeInfo;
+import com.avevad.cloud9.core.CloudCommon.Node;
+import com.avevad.cloud9.core.CloudCommon.NodeType;
+import com.avevad.cloud9.core.MetadataCache;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+
+import static com.avevad.cloud9.core.CloudCommon.*;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+import static org.junit.Assert.*;
+
+public class CloudClientTest extends ServerTestBase {
+    @Test
+    public void pipelinedRequestsGetTheirOwnResponses() throws Exception {
+        CloudClient client = connect();
+        Node home = client.getHome();
+        List<CompletableFuture<Node>> made = new ArrayList<>();
+        for (int i = 0; i < 1000; i++) made.add(client.makeNodeAsync(home, "node" + i, NodeType.FILE));
+        List<CompletableFuture<Node>> parents = new ArrayList<>();
+        for (CompletableFuture<Node> node : made) parents.add(client.getNodeParentAsync(node.get()));
+        for (CompletableFuture<Node> parent : parents) assertEquals(home, parent.get());
+        Map<String, Node> listed = new HashMap<>();
+        for (DirectoryEntry entry : client.listDirectoryAsync(home).get()) listed.put(entry.name, entry.node);
+        assertEquals(made.size(), listed.size());
+        for (int i = 0; i < made.size(); i++) assertEquals(made.get(i).get(), listed.get("node" + i));
+    }
+
+    @Test
+    public void concurrentCallersShareOneConnection() throws Exception {
+        CloudClient client = connect();
+        Node home = client.getHome();
+        Node[] files = new Node[8];
+        for (int i = 0; i < files.length; i++) files[i] = upload(client, home, "file" + i, randomData(i * 1000, i));
+        Thread[] threads = new Thread[files.length];
+        Throwable[] errors = new Throwable[files.length];
+        for (int i = 0; i < threads.length; i++) {
+            int index = i;
+            threads[i] = new Thread(() -> {
+                try {
+                    for (int round = 0; round < 200; round++) {
+                        assertEquals(index * 1000L, client.getNodeInfo(files[index]).size);
+                    }
+                } catch (Throwable e) {
+                    errors[index] = e;
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) thread.join();
+        for (Throwable error : errors) assertNull(error);
+    }
+
+    @Test
+    public void seekMovesTheReadPosition() throws Exception {
+        CloudClient client = connect();
+        byte[] data = randomData(1 << 20, 1);
+        Node file = upload(client, client.getHome(), "file", data);
+        byte fd = client.openFD(file, FD_MODE_READ);
+        byte[] buffer = new byte[4096];
+        client.seekFD(fd, 300_000);
+        assertEquals(buffer.length, client.readFD(fd, buffer, 0, buffer.length));
+        assertArrayEquals(Arrays.copyOfRange(data, 300_000, 300_000 + buffer.length), buffer);
+        client.seekFD(fd, 17);
+        assertEquals(buffer.length, client.readFD(fd, buffer, 0, buffer.length));
+        assertArrayEquals(Arrays.copyOfRange(data, 17, 17 + buffer.length), buffer);
+        client.closeFD(fd);
+    }
+
+    @Test
+    public void segmentsReadOutOfOrderReassembleTheFile() throws Exception {
+        CloudClient client = connect();
+        byte[] data = randomData(4 * 1024 * 1024 + 123, 2);
+        Node file = upload(client, client.getHome(), "file", data);
+        int segmentSize = 1024 * 1024;
+        Path local = Files.createTempFile("segments", null);
+        try (FileChannel out = FileChannel.open(local, WRITE)) {
+            for (int start = data.length / segmentSize * segmentSize; start >= 0; start -= segmentSize) {
+                int size = Integer.min(segmentSize, data.length - start);
+                byte fd = client.openFD(file, FD_MODE_READ);
+                client.seekFD(fd, start);
+                client.longReadFD(fd, size, out, start, ByteBuffer.allocateDirect(64 * 1024), read -> {
+                });
+                client.closeFD(fd);
+            }
+        }
+        assertArrayEquals(data, Files.readAllBytes(local));
+        Files.delete(local);
+    }
+
+    @Test
+    public void batchInfoMatchesSingleRequests() throws Exception {
+        CloudClient client = connect();
+        Node home = client.getHome();
+        List<Node> nodes = new ArrayList<>();
+        nodes.add(home);
+        nodes.add(client.makeNode(home, "dir", NodeType.DIRECTORY));
+        for (int i = 0; i < 5; i++) nodes.add(upload(client, home, "file" + i, randomData(i * 777, i)));
+        List<NodeInfo> batch = client.getNodeInfo(nodes);
+        assertEquals(nodes.size(), batch.size());
+        for (int i = 0; i < nodes.size(); i++) assertInfoEquals(client.getNodeInfo(nodes.get(i)), batch.get(i));
+    }
+
+    @Test
+    public void listingWithInfoMatchesSingleRequests() throws Exception {
+        CloudClient client = connect();
+        Node home = client.getHome();
+        client.makeNode(home, "dir", NodeType.DIRECTORY);
+        for (int i = 0; i < 5; i++) upload(client, home, "file" + i, randomData(i * 777, i));
+        List<DirectoryEntryInfo> entries = client.listDirectoryInfoAsync(home).get();
+        assertEquals(6, entries.size());
+        for (DirectoryEntryInfo entry : entries) assertInfoEquals(client.getNodeInfo(entry.node), entry.info);
+    }
+
+    @Test
+    public void writesThroughDescriptorsInvalidateCachedInfo() throws Exception {
+        CloudClient client = connect();
+        client.setMetadataCache(new MetadataCache(1024, 60_000));
+        Node file = client.makeNode(client.getHome(), "file", NodeType.FILE);
+        assertEquals(0, client.getNodeInfo(file).size);
+        byte[] data = randomData(3000, 8);
+        byte fd = client.openFD(file, FD_MODE_WRITE);
+        client.writeFD(fd, data, 0, 1000);
+        assertEquals(1000, client.getNodeInfo(file).size);
+        client.longWriteFD(fd, 2000, data, 1000, () -> 2000);
+        client.closeFD(fd);
+        assertEquals(3000, client.getNodeInfo(file).size);
+    }
+
+    @Test
+    public void compressedSessionTransfersData() throws Exception {
+        CloudClient client = connect(true);
+        assertTrue(client.isCompressed());
+        byte[] random = randomData(1 << 20, 3);
+        byte[] repetitive = new byte[1 << 20];
+        for (int i = 0; i < repetitive.length; i++) repetitive[i] = (byte) (i % 7);
+        Node home = client.getHome();
+        Node randomFile = upload(client, home, "random", random);
+        Node repetitiveFile = upload(client, home, "repetitive", repetitive);
+        assertArrayEquals(random, download(client, randomFile, random.length));
+        assertArrayEquals(repetitive, download(client, repetitiveFile, repetitive.length));
+        CloudClient clone = clone(client);
+        assertTrue(clone.isCompressed());
+        assertArrayEquals(random, download(clone, randomFile, random.length));
+    }
+
+    @Test
+    public void fileChannelTransfersRoundTrip() throws Exception {
+        CloudClient client = connect();
+        byte[] data = randomData(3 * 1024 * 1024 + 5, 4);
+        Path source = Files.createTempFile("source", null);
+        Files.write(source, data);
+        Node file = client.makeNode(client.getHome(), "file", NodeType.FILE);
+        byte fd = client.openFD(file, FD_MODE_WRITE);
+        try (FileChannel in = FileChannel.open(source, READ)) {
+            client.longWriteFD(fd, data.length, in, 0, ByteBuffer.allocateDirect(64 * 1024), sent -> {
+            });
+        }
+        client.closeFD(fd);
+        assertEquals(data.length, client.getNodeInfo(file).size);
+        assertArrayEquals(data, download(client, file, data.length));
+        Files.delete(source);
+    }
+
+    private static void assertInfoEquals(NodeInfo expected, NodeInfo actual) {
+        assertEquals(expected.type, actual.type);
+        assertEquals(expected.size, actual.size);
+        assertEquals(expected.rights, actual.rights);
+    }
+}
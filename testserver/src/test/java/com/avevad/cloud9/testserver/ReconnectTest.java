@@ -0,0 +1,66 @@
+package com.avevad.cloud9.testserver;
+
+import com.avevad.cloud9.core.CloudClient;
+import com.avevad.cloud9.core.CloudClient.NodeInfo;
+import com.avevad.cloud9.core.CloudCommon.Node;
+import com.avevad.cloud9.core.CloudCommon.NodeType;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import static org.junit.Assert.*;
+
+public class ReconnectTest extends ServerTestBase {
+    @Test
+    public void droppedSessionIsReestablished() throws Exception {
+        CloudClient client = connect(true);
+        client.setAutoReconnect(true);
+        Node file = upload(client, client.getHome(), "file", randomData(1000, 6));
+        server.dropConnections();
+        assertEquals(1000, client.getNodeInfo(file).size);
+        assertTrue(client.isConnected());
+        assertTrue(client.isCompressed());
+    }
+
+    @Test
+    public void idempotentRequestsInFlightAreReplayed() throws Exception {
+        server.setLatency(200);
+        CloudClient client = connect();
+        client.setAutoReconnect(true);
+        Node home = client.getHome();
+        Node file = upload(client, home, "file", randomData(1234, 7));
+        List<CompletableFuture<NodeInfo>> infos = new ArrayList<>();
+        for (int i = 0; i < 20; i++) infos.add(client.getNodeInfoAsync(i % 2 == 0 ? file : home));
+        server.dropConnections();
+        for (int i = 0; i < infos.size(); i++) {
+            NodeInfo info = infos.get(i).get();
+            if (i % 2 == 0) assertEquals(1234, info.size);
+        }
+    }
+
+    @Test
+    public void mutatingRequestInFlightFailsWithSessionReset() throws Exception {
+        server.setLatency(200);
+        CloudClient client = connect();
+        client.setAutoReconnect(true);
+        Node home = client.getHome();
+        CompletableFuture<Node> made = client.makeNodeAsync(home, "dir", NodeType.DIRECTORY);
+        server.dropConnections();
+        ExecutionException error = assertThrows(ExecutionException.class, made::get);
+        assertTrue(error.getCause() instanceof CloudClient.SessionResetException);
+        assertEquals(home, client.getHome());
+    }
+
+    @Test
+    public void droppedSessionFailsWithoutAutoReconnect() throws Exception {
+        CloudClient client = connect();
+        Node home = client.getHome();
+        server.dropConnections();
+        assertThrows(IOException.class, () -> client.getNodeInfo(home));
+        assertFalse(client.isConnected());
+    }
+}
@@ -0,0 +1,81 @@
+package com.avevad.cloud9.testserver;
+
+import com.avevad.cloud9.core.CloudClient;
+import com.avevad.cloud9.core.CloudCommon.Node;
+import com.avevad.cloud9.core.CloudCommon.NodeType;
+import com.avevad.cloud9.core.NIOConnection;
+import org.junit.After;
+import org.junit.Before;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static com.avevad.cloud9.core.CloudCommon.FD_MODE_READ;
+import static com.avevad.cloud9.core.CloudCommon.FD_MODE_WRITE;
+
+/**
+ * Starts a fresh {@link TestServer} with a single user for every test and closes it together with all clients afterwards.
+ */
+abstract class ServerTestBase {
+    protected static final String LOGIN = "user";
+    protected static final String PASSWORD = "password";
+    private static final int WRITE_CHUNK_SIZE = 64 * 1024;
+
+    protected TestServer server;
+    private final List<CloudClient> clients = new ArrayList<>();
+
+    @Before
+    public void startServer() throws Exception {
+        server = new TestServer().start();
+        server.addUser(LOGIN, PASSWORD);
+    }
+
+    @After
+    public void stopServer() {
+        for (CloudClient client : clients) client.close();
+        server.close();
+    }
+
+    protected CloudClient connect(boolean compress) throws Exception {
+        CloudClient client = new CloudClient(new NIOConnection(server.getHost(), server.getPort()), LOGIN, () -> PASSWORD, compress);
+        clients.add(client);
+        return client;
+    }
+
+    protected CloudClient connect() throws Exception {
+        return connect(false);
+    }
+
+    protected CloudClient clone(CloudClient origin) throws Exception {
+        CloudClient client = new CloudClient(origin);
+        clients.add(client);
+        return client;
+    }
+
+    protected static byte[] randomData(int size, long seed) {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    protected static Node upload(CloudClient client, Node parent, String name, byte[] data) throws Exception {
+        Node node = client.makeNode(parent, name, NodeType.FILE);
+        byte fd = client.openFD(node, FD_MODE_WRITE);
+        for (int done = 0; done < data.length; done += WRITE_CHUNK_SIZE) {
+            client.writeFD(fd, data, done, Integer.min(WRITE_CHUNK_SIZE, data.length - done));
+        }
+        client.closeFD(fd);
+        return node;
+    }
+
+    protected static byte[] download(CloudClient client, Node node, int size) throws Exception {
+        byte[] data = new byte[size];
+        byte fd = client.openFD(node, FD_MODE_READ);
+        client.longReadFD(fd, size, ByteBuffer.wrap(data), read -> {
+        });
+        client.closeFD(fd);
+        return data;
+    }
+}